@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import com.edouardfouche.monitoring.bandits.Bandit
+import com.edouardfouche.monitoring.rewards.AbsoluteThreshold
+import com.edouardfouche.monitoring.scalingstrategies.NoScaling
+import com.edouardfouche.preprocess.InternalDataRef
+import com.edouardfouche.streamsimulator.CachedStreamSimulator
+import org.openjdk.jmh.annotations._
+
+/**
+  * Time of one round (Bandit.next) for each bandit family, on a synthetic stream (see BenchmarkData.synthetic).
+  * The number of pulls is kept constant (NoScaling), and the stream starts over when it is depleted.
+  * e.g., sbt "benchmarks/jmh:run BanditBenchmark -p bandit=MP-KLUCB -p narms=100000"
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = Array("-Xmx8G"))
+class BanditBenchmark {
+  @Param(Array("CUCB", "MP-KLUCB", "MP-TS", "Exp3.M", "CUCB-ADWIN", "MP-KLUCB-ADWIN", "MP-TS-ADWIN", "Exp3.M-ADWIN"))
+  var bandit: String = _
+
+  @Param(Array("10", "1000", "100000", "2000000"))
+  var narms: Int = _
+
+  @Param(Array("1", "10", "100")) // capped to narms
+  var k: Int = _
+
+  var instance: Bandit = _
+
+  @Setup(Level.Trial)
+  def setup(): Unit = {
+    val stream = CachedStreamSimulator(InternalDataRef("synthetic", BenchmarkData.synthetic(narms), "cache"))
+    val l = k.min(narms)
+    instance = BenchmarkData.bandits(bandit)(stream, AbsoluteThreshold(0.5), NoScaling(l), l)
+  }
+
+  @Benchmark
+  def next(): (Array[(Int, Int)], Array[Double], Double) = {
+    if(instance.stream.state >= instance.stream.nbatches) instance.stream.state = 0 // start the stream over
+    instance.next
+  }
+}
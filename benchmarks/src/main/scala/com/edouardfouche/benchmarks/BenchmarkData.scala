@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.benchmarks
+
+import com.edouardfouche.monitoring.bandits.Bandit
+import com.edouardfouche.monitoring.bandits.adversarial.{Exp3M, Exp3M_ADWIN}
+import com.edouardfouche.monitoring.bandits.nonstationary.{CUCB_ADWIN, MPKLUCB_ADWIN, MPTS_ADWIN}
+import com.edouardfouche.monitoring.bandits.stationary.{CUCB, MPKLUCB, MPTS}
+import com.edouardfouche.monitoring.rewards.Reward
+import com.edouardfouche.monitoring.scalingstrategies.ScalingStrategy
+import com.edouardfouche.streamsimulator.Simulator
+
+/**
+  * Synthetic, in-memory inputs for the benchmarks
+  */
+object BenchmarkData {
+  /**
+    * A synthetic action matrix (as expected by CachedStreamSimulator), where the arm j yields 1 with probability
+    * (j % 100) / 100 and 0 otherwise. The number of rounds is chosen such that the matrix holds about 4M values.
+    * @param narms the number of arms
+    * @param seed the seed of the random generator
+    * @return a row-oriented matrix (one row per round, one column per arm)
+    */
+  def synthetic(narms: Int, seed: Long = 0): Array[Array[Double]] = {
+    val nrounds = ((1 << 22) / narms).max(2).min(1000)
+    val random = new java.util.SplittableRandom(seed)
+    Array.fill(nrounds)(Array.tabulate(narms)(j => if(random.nextDouble() < (j % 100) / 100.0) 1.0 else 0.0))
+  }
+
+  // The bandit families to benchmark, by name
+  val bandits: Map[String, (Simulator, Reward, ScalingStrategy, Int) => Bandit] = Map(
+    "CUCB" -> CUCB,
+    "MP-KLUCB" -> MPKLUCB,
+    "MP-TS" -> MPTS,
+    "Exp3.M" -> Exp3M,
+    "CUCB-ADWIN" -> CUCB_ADWIN(0.1) _,
+    "MP-KLUCB-ADWIN" -> MPKLUCB_ADWIN(0.1) _,
+    "MP-TS-ADWIN" -> MPTS_ADWIN(0.1) _,
+    "Exp3.M-ADWIN" -> Exp3M_ADWIN(0.1) _
+  )
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import com.edouardfouche.utils.KLUCB
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+/**
+  * Compare the exact inversion of the KL-divergence (Newton's method) with the fast one (table + one Newton step)
+  * The inputs are the empirical means and exploration terms log(t)/n of arms pulled n times up to time t.
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+class KLUCBBenchmark {
+  @Param(Array("1000", "100000", "10000000")) // the time step
+  var t: Int = _
+
+  val size = 1024
+  val p: Array[Double] = new Array[Double](size)
+  val logndn: Array[Double] = new Array[Double](size)
+
+  @Setup
+  def setup(): Unit = {
+    val random = new scala.util.Random(0)
+    for(i <- 0 until size) {
+      val n = 1 + random.nextInt(t.min(10000))
+      p(i) = (random.nextInt(n + 1).toDouble / n).max(KLUCB.Ndelta)
+      logndn(i) = KLUCB.exploration(t, n)
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(1024)
+  def exact(bh: Blackhole): Unit = {
+    var i = 0
+    while(i < size) {
+      bh.consume(KLUCB.upper(p(i), logndn(i)))
+      i += 1
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(1024)
+  def fast(bh: Blackhole): Unit = {
+    var i = 0
+    while(i < size) {
+      bh.consume(KLUCB.upperFast(p(i), logndn(i)))
+      i += 1
+    }
+  }
+}
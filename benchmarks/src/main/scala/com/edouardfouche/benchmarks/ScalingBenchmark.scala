@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import com.edouardfouche.monitoring.scalingstrategies._
+import org.openjdk.jmh.annotations._
+
+/**
+  * Time of one scaling decision (ScalingStrategy.scale), as it happens after each round of a bandit:
+  * k arms were pulled (in turn), their sums and counts were updated, and t grows by one.
+  * The arms yield 1 with probability 0.6 to 1.0, so that the KL-based strategies consider scaling up (delta = 0.5).
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = Array("-Xmx8G"))
+class ScalingBenchmark {
+  @Param(Array("KL", "KL-fast", "KLP", "Naive1", "Naive2", "Naive3", "No"))
+  var strategy: String = _
+
+  @Param(Array("10", "1000", "100000", "2000000"))
+  var narms: Int = _
+
+  @Param(Array("1", "10", "100")) // capped to narms - 1, so that the KL-based strategies may scale up
+  var k: Int = _
+
+  var instance: ScalingStrategy = _
+  var sums: Array[Double] = _
+  var counts: Array[Double] = _
+  var indexes: Array[Int] = _
+  var rewards: Array[Double] = _
+  var t: Double = _
+  var round: Int = _
+  val random = new java.util.SplittableRandom(0)
+
+  @Setup(Level.Trial)
+  def setup(): Unit = {
+    val l = k.min(narms - 1)
+    instance = strategy match {
+      case "KL" => KLBasedScaling(1, narms, 0.5)
+      case "KL-fast" => KLBasedScaling(1, narms, 0.5, fast = true)
+      case "KLP" => KLBasedScalingPlus(1, narms, 0.5)
+      case "Naive1" => NaiveScaling1(1, narms, 0.9, 0.1)
+      case "Naive2" => NaiveScaling2(1, narms, 0.9)
+      case "Naive3" => NaiveScaling3(1, narms, 0.9)
+      case "No" => NoScaling(l)
+    }
+    counts = Array.fill(narms)(1.0 + random.nextInt(100))
+    sums = counts.indices.map(x => (counts(x) * (0.6 + 0.4 * (x % 100) / 100.0)).floor).toArray
+    indexes = new Array[Int](l)
+    rewards = new Array[Double](l)
+    t = counts.sum / l
+    round = 0
+  }
+
+  @Benchmark
+  def scale(): Int = {
+    var i = 0
+    while(i < indexes.length) {
+      val arm = (round * indexes.length + i) % narms
+      indexes(i) = arm
+      rewards(i) = if(random.nextDouble() < 0.6 + 0.4 * (arm % 100) / 100.0) 1.0 else 0.0
+      counts(arm) += 1
+      sums(arm) += rewards(i)
+      i += 1
+    }
+    round += 1
+    t += 1
+    instance.scale(rewards, indexes, sums, counts, t)
+  }
+}
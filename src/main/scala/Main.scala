@@ -33,6 +33,7 @@ object Main extends LazyLogging {
     StopWatch.start
     val result = startJob(experimentFactory(args(0)))
     val (cpu, wall) = StopWatch.stop(unit)
+    ResultSink.close() // write the pending results
 
     println(s"Computation time: \t ${result._1} $unit (cpu), ${result._2} $unit (wall)")
     println(s"Total elapsed time: \t $cpu $unit (cpu), $wall $unit (wall)")
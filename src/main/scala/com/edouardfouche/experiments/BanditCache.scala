@@ -18,7 +18,7 @@ package com.edouardfouche.experiments
 
 import com.edouardfouche.experiments.Data._
 import com.edouardfouche.monitoring.actions.MI
-import com.edouardfouche.preprocess.DataRef
+import com.edouardfouche.preprocess.{BinaryMatrix, DataRef}
 import com.edouardfouche.streamsimulator.StreamSimulator
 
 /**
@@ -53,7 +53,10 @@ object BanditCache extends BanditExperiment {
       val matrixPath = System.getProperty("user.dir") + "/data" + "/" + s"${initstream.id}.csv"
       info("Dumping results...")
       dump(matrixPath, cache.map(_ mkString ",").mkString("\n"))
+      // The same, in the binary format, which can be memory-mapped with a MatrixDataRef
+      BinaryMatrix.write(System.getProperty("user.dir") + "/data" + "/" + s"${initstream.id}.bin", cache)
       info("Dumping has ended!")
+      initstream.close()
     }
     info(s"End of experiment ${this.getClass.getSimpleName} - ${formatter.format(java.util.Calendar.getInstance().getTime)}")
   }
@@ -16,8 +16,6 @@
  */
 package com.edouardfouche.experiments
 
-import java.io.{File, FileWriter}
-
 import com.edouardfouche.monitoring.bandits._
 import com.edouardfouche.utils
 import com.edouardfouche.utils.StopWatch
@@ -79,14 +77,40 @@ trait BanditExperiment extends LazyLogging {
 
   def run(): Unit
 
+  // The number of threads to run the repetitions (-Dparallelism=<n>, by default the number of cores)
+  val parallelism: Int = Integer.getInteger("parallelism", Runtime.getRuntime.availableProcessors())
+  lazy val scheduler: ExperimentScheduler = new ExperimentScheduler(parallelism)
+
+  // The format of the summaries (-Dresults=csv|columnar, by default csv), see ColumnarResults
+  val resultFormat: String = System.getProperty("results", "csv")
+  require(resultFormat == "csv" || resultFormat == "columnar", s"Unknown result format $resultFormat")
+
+  // Whether CUCB, CUCBm and MP-SWUCB select their arms with an UCBIndex (-Dincremental=true, by default false)
+  val incremental: Boolean = java.lang.Boolean.getBoolean("incremental")
+
+  // Whether the KL-UCB bandits use the fast inversion of the KL-divergence (-Dfastklucb=true, by default false)
+  val fastklucb: Boolean = java.lang.Boolean.getBoolean("fastklucb")
+
+  /**
+    * Apply the options given as properties to a bandit, before running it
+    * @param bandit a newly created bandit
+    * @return the same bandit
+    */
+  def configure(bandit: Bandit): Bandit = {
+    bandit match {
+      case b: BanditIncrementalUCB if incremental => b.enable_incremental
+      case b: BanditKLUCB if fastklucb => b.enable_fast
+      case _ =>
+    }
+    bandit
+  }
+
   def info(s: String): Unit = logger.info(s)
 
   @tailrec
   final def runner(bandit: Bandit, iteration: Int, gain: Double, matrixdiff: Double, rep: Int): (Double, Double) = {
     // if (iteration % 200 == 0) info(s"Reached iteration $iteration with bandit ${bandit.name}")
 
-    val ref = bandit.stream.cache
-
     val nextresult_watch = StopWatch.measureTime(bandit.next)
     val nextresult_cpu = nextresult_watch._1
     val nextresult_wall = nextresult_watch._2
@@ -98,8 +122,9 @@ trait BanditExperiment extends LazyLogging {
     }
     else {
       // be careful: Not meaningful in every case maybe
-      val diff = breeze.linalg.sum(breeze.numerics.abs(bandit.currentMatrix - breeze.linalg.Vector(ref(iteration))))
-      //val diff = breeze.linalg.sum(bandit.currentMatrix.toArray.zip(ref(iteration).toArray).map(x => bandit.reward.getReward(x._1, x._2)))
+      val ref = bandit.stream.cachedRow(iteration)
+      val diff = breeze.linalg.sum(breeze.numerics.abs(bandit.currentMatrix - breeze.linalg.Vector(ref)))
+      //val diff = breeze.linalg.sum(bandit.currentMatrix.toArray.zip(ref).map(x => bandit.reward.getReward(x._1, x._2)))
 
       val attributes = List("bandit","dataset","action","reward","scaling","windowSize","stepSize",
          "delta","gamma","k","banditk","narms","gain","matrixdiff","cpuTime","wallTime","iteration","nrep")
@@ -191,21 +216,13 @@ trait BanditExperiment extends LazyLogging {
       results(name) = v
     }
 
-    def write(path: String): Unit = {
-      synchronized {
-        if(!new File(path).exists) { // write the header
-          val fileA = new File(path)
-          val fwA = new FileWriter(fileA, true)
-          fwA.write(getHeader)
-          fwA.flush()
-          fwA.close()
-        }
-        val fileA = new File(path)
-        val fwA = new FileWriter(fileA, true) // append set to true
-        fwA.write(this.toString) // this is the string
-        fwA.flush()
-        fwA.close()
-      }
+    // Add a number, written with the given format in csv files (e.g., "%.2f"), and as a number in columnar files
+    def add(name: String, v: Double, format: String): Unit = add(name, ColumnarResults.Formatted(v, format))
+
+    def write(path: String): Unit = resultFormat match {
+      case "columnar" => ResultSink.write(ColumnarResults.path(path), attributes.toArray,
+        attributes.map(x => results.getOrElse(x, null)).toArray[Any])
+      case _ => ResultSink.write(path, Some(getHeader), this.toString)
     }
 
     override def toString: String = {
@@ -216,13 +233,5 @@ trait BanditExperiment extends LazyLogging {
   }
 
 
-  def dump(path:String, towrite:String) : Unit = {
-    synchronized {
-      val fileA = new File(path)
-      val fwA = new FileWriter(fileA, true)
-      fwA.write(towrite) // this is the string
-      fwA.flush()
-      fwA.close()
-    }
-  }
+  def dump(path:String, towrite:String) : Unit = ResultSink.write(path, None, towrite)
 }
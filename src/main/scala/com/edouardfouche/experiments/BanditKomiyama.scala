@@ -16,12 +16,11 @@
  */
 package com.edouardfouche.experiments
 
-import breeze.linalg
 import com.edouardfouche.monitoring.bandits.oracles.OracleStatic
 import com.edouardfouche.monitoring.bandits.stationary._
 import com.edouardfouche.monitoring.bandits.adversarial._
 import com.edouardfouche.monitoring.rewards.AbsoluteThreshold
-import com.edouardfouche.monitoring.scalingstrategies.{NoScaling, ScalingStrategy}
+import com.edouardfouche.monitoring.scalingstrategies.NoScaling
 import com.edouardfouche.preprocess.{KomiyamaScenario1Generator, KomiyamaScenario2Generator, InternalDataRef}
 import com.edouardfouche.streamsimulator.CachedStreamSimulator
 
@@ -52,59 +51,51 @@ object BanditKomiyama extends BanditExperiment {
     // display parameters
     info(s"Parameters:")
 
-    for {
-      scenario <- scenarios.par
-    } {
-      val id= scenario._1.id
-      val generator= scenario._1
-      val k = scenario._2
-      val scalingstrategy: ScalingStrategy = NoScaling(k)
-
-      info(s"Prepare simulators for $id")
-      val simulators = (0 until nRep).map{x =>
-        val d = generator.generate()
-        val datasource = InternalDataRef(id, d, "cache")
-        CachedStreamSimulator(datasource)
-      }
-      info(s"Simulators for $id are ready!")
-      for{
-        banditConstructor <- banditConstructors.par
-      } {
-        var allgains: linalg.Vector[Double] = linalg.Vector((1 to simulators(0).nbatches).map(x => 0.0).toArray)
-        for {
-          rep <- 0 until nRep
-        } {
-          val bandit = banditConstructor(simulators(rep).copy(), reward, scalingstrategy, k)
-          if (rep % 10 == 0) info(s"Reached rep $rep with bandit ${bandit.name}, $id")
-          val gains = fullrunner(bandit, Array[Double]())
-          allgains = allgains +:+ (breeze.linalg.Vector(gains) *:* (1.0/nRep))
+    val configurations = for {
+      (generator, k) <- scenarios.toSeq
+      simulators = {
+        info(s"Prepare simulators for ${generator.id}")
+        val simulators = (0 until nRep).map{x =>
+          val d = generator.generate()
+          val datasource = InternalDataRef(generator.id, d, "cache")
+          CachedStreamSimulator(datasource)
         }
-        val bandit = banditConstructor(simulators(0).copy(), reward, scalingstrategy, k)
+        info(s"Simulators for ${generator.id} are ready!")
+        simulators
+      }
+      banditConstructor <- banditConstructors
+    } yield (generator.id, k, simulators, banditConstructor)
 
-        for{
-          step <- allgains.toArray.zipWithIndex
-        }{
-          val summary = ExperimentSummary(attributes)
-          // this is the list of all the data possible we can record, "attributes" is usually a subset of it
-          // val attributes = List("bandit","dataset","action","reward","scaling","windowSize","stepSize",
-          // "delta","gamma","k","banditk","narms","gain","matrixdiff","cpuTime","wallTime","iteration","nrep")
-          summary.add("bandit", bandit.name)
-          summary.add("dataset", bandit.stream.dataset.id)
-          /*
-          summary.add("action", bandit.stream.action_name)
-          summary.add("reward", bandit.reward.name)
-          summary.add("scaling", bandit.scalingstrategy.name)
-          summary.add("windowSize", bandit.stream.windowSize)
-          summary.add("stepSize", bandit.stream.stepSize)
-          summary.add("delta", bandit.scalingstrategy.delta)
-          summary.add("gamma", bandit.scalingstrategy.gamma)
-          */
-          summary.add("banditk", bandit.k)
-          summary.add("narms", bandit.narms)
-          summary.add("gain", step._1)
-          summary.add("iteration", step._2)
-          summary.write(summaryPath)
-        }
+    scheduler.run(configurations, 1)(_ => nRep) { case ((id, k, simulators, banditConstructor), rep) =>
+      val bandit = configure(banditConstructor(simulators(rep).copy(), reward, NoScaling(k), k))
+      if (rep % 10 == 0) info(s"Reached rep $rep with bandit ${bandit.name}, $id")
+      Array(fullrunner(bandit, Array[Double]()))
+    } { case ((id, k, simulators, banditConstructor), Array(allgains)) =>
+      val bandit = configure(banditConstructor(simulators(0).copy(), reward, NoScaling(k), k))
+
+      for{
+        step <- allgains.zipWithIndex
+      }{
+        val summary = ExperimentSummary(attributes)
+        // this is the list of all the data possible we can record, "attributes" is usually a subset of it
+        // val attributes = List("bandit","dataset","action","reward","scaling","windowSize","stepSize",
+        // "delta","gamma","k","banditk","narms","gain","matrixdiff","cpuTime","wallTime","iteration","nrep")
+        summary.add("bandit", bandit.name)
+        summary.add("dataset", bandit.stream.dataset.id)
+        /*
+        summary.add("action", bandit.stream.action_name)
+        summary.add("reward", bandit.reward.name)
+        summary.add("scaling", bandit.scalingstrategy.name)
+        summary.add("windowSize", bandit.stream.windowSize)
+        summary.add("stepSize", bandit.stream.stepSize)
+        summary.add("delta", bandit.scalingstrategy.delta)
+        summary.add("gamma", bandit.scalingstrategy.gamma)
+        */
+        summary.add("banditk", bandit.k)
+        summary.add("narms", bandit.narms)
+        summary.add("gain", step._1)
+        summary.add("iteration", step._2)
+        summary.write(summaryPath)
       }
     }
     info(s"End of experiment ${this.getClass.getSimpleName} - ${formatter.format(java.util.Calendar.getInstance().getTime)}")
@@ -16,7 +16,6 @@
  */
 package com.edouardfouche.experiments
 
-import breeze.linalg
 import com.edouardfouche.experiments.Data.bioliq_1wx20_MI_1000_100
 import com.edouardfouche.monitoring.bandits.nonstationary.MPTS_ADWIN
 import com.edouardfouche.monitoring.bandits.oracles._
@@ -82,58 +81,41 @@ object BanditRealWorldRewards extends BanditExperiment {
     info(s"rewards: ${rewards.map(_.name) mkString ", "}")
     info(s"nRep: ${nRep}")
 
-    for {
-      reward <- rewards
-    } {
-      for {
-        scalingstrategy <- scalingstrategies.par
-      } {
-        for{
-          banditConstructor <- banditConstructors.par
-        } {
-          var allgains: linalg.Vector[Double] = linalg.Vector((1 to streamsimulator.nbatches).map(x => 0.0).toArray)
-          var allks: linalg.Vector[Double] = linalg.Vector((1 to streamsimulator.nbatches).map(x => 0.0).toArray)
-          var allcpu: linalg.Vector[Double] = linalg.Vector((1 to streamsimulator.nbatches).map(x => 0.0).toArray)
-
-          for {
-            rep <- 0 until nRep
-          } {
-            val bandit = banditConstructor(streamsimulator.copy(), reward, scalingstrategy, scalingstrategy.k)
-            if (rep % 10 == 0) info(s"Reached rep $rep with bandit ${bandit.name}, ${scalingstrategy.name}")
-            val (gains, ks, cpu) = fullrunnerGainsKsCPU(bandit, Array[Double](), Array[Int](), Array[Double]())
-            allgains = allgains +:+ (breeze.linalg.Vector(gains) *:* (1.0/nRep))
-            allks = allks +:+ (breeze.linalg.Vector(ks.map(_.toDouble)) *:* (1.0/nRep))
-            allcpu = allcpu +:+ (breeze.linalg.Vector(cpu.map(_.toDouble)) *:* (1.0/nRep))
-          }
-
-          val bandit = banditConstructor(streamsimulator.copy(), reward, scalingstrategy, scalingstrategy.k)
-          for{
-            step <- 0 until allgains.length
-          }{
-            val summary = ExperimentSummary(attributes)
-            // this is the list of all the data possible we can record, "attributes" is usually a subset of it
-            // val attributes = List("bandit","dataset","action","reward","scaling","windowSize","stepSize",
-            // "delta","gamma","k","banditk","narms","gain","matrixdiff","cpuTime","wallTime","iteration","nrep")
-            summary.add("bandit", bandit.name)
-            summary.add("dataset", bandit.stream.dataset.id)
-            summary.add("scalingstrategy", bandit.scalingstrategy.name)
-            summary.add("reward", reward)
-            summary.add("k",  "%.2f".format(allks(step)))
-            summary.add("gain",  "%.2f".format(allgains(step)))
-            //summary.add("confidence", allconfs(step))
-            //summary.add("gamma", bandit.scalingstrategy.gamma)
-            summary.add("cputime", "%.4f".format(allcpu(step)))
-            summary.add("iteration", step)
-            summary.write(summaryPath)
-          }
-        }
-
+    val configurations = for {
+      reward <- rewards.toSeq
+      scalingstrategy <- scalingstrategies.toSeq
+      banditConstructor <- banditConstructors
+    } yield (reward, scalingstrategy, banditConstructor)
+
+    scheduler.run(configurations, 3)(_ => nRep) { case ((reward, scalingstrategy, banditConstructor), rep) =>
+      val strategy = scalingstrategy.fresh // each repetition has its own strategy, from its initial k
+      val bandit = configure(banditConstructor(streamsimulator.copy(), reward, strategy, strategy.k))
+      if (rep % 10 == 0) info(s"Reached rep $rep with bandit ${bandit.name}, ${scalingstrategy.name}")
+      val (gains, ks, cpu) = fullrunnerGainsKsCPU(bandit, Array[Double](), Array[Int](), Array[Double]())
+      Array(gains, ks.map(_.toDouble), cpu)
+    } { case ((reward, scalingstrategy, banditConstructor), Array(allgains, allks, allcpu)) =>
+      val bandit = configure(banditConstructor(streamsimulator.copy(), reward, scalingstrategy, scalingstrategy.k))
+      for{
+        step <- 0 until allgains.length
+      }{
+        val summary = ExperimentSummary(attributes)
+        // this is the list of all the data possible we can record, "attributes" is usually a subset of it
+        // val attributes = List("bandit","dataset","action","reward","scaling","windowSize","stepSize",
+        // "delta","gamma","k","banditk","narms","gain","matrixdiff","cpuTime","wallTime","iteration","nrep")
+        summary.add("bandit", bandit.name)
+        summary.add("dataset", bandit.stream.dataset.id)
+        summary.add("scalingstrategy", bandit.scalingstrategy.name)
+        summary.add("reward", reward)
+        summary.add("k", allks(step), "%.2f")
+        summary.add("gain", allgains(step), "%.2f")
+        //summary.add("confidence", allconfs(step))
+        //summary.add("gamma", bandit.scalingstrategy.gamma)
+        summary.add("cputime", allcpu(step), "%.4f")
+        summary.add("iteration", step)
+        summary.write(summaryPath)
       }
     }
 
-
-
-
     info(s"End of experiment ${this.getClass.getSimpleName} - ${formatter.format(java.util.Calendar.getInstance().getTime)}")
   }
 }
@@ -16,7 +16,6 @@
  */
 package com.edouardfouche.experiments
 
-import breeze.linalg
 import com.edouardfouche.experiments.Data._
 import com.edouardfouche.monitoring.bandits.adversarial._
 import com.edouardfouche.monitoring.bandits.nonstationary.MPTS_ADWIN
@@ -79,80 +78,67 @@ object BanditScalabilityT extends BanditExperiment {
     info(s"reward: ${reward.name}")
     info(s"nRep: ${nRep}")
 
-    for {
-      d <- data
-    } {
-      info(s"Working with ${d.id}")
-      val streamsimulator = CachedStreamSimulator(d)
-
-      val lmax = streamsimulator.npairs
-      val scalingstrategies: Array[ScalingStrategy] = Array(
-        KLBasedScaling(lmin, lmax, 0.1),
-        KLBasedScaling(lmin, lmax, 0.2),
-        KLBasedScaling(lmin, lmax, 0.3),
-        KLBasedScaling(lmin, lmax, 0.4),
-        KLBasedScaling(lmin, lmax, 0.5),
-        KLBasedScaling(lmin, lmax, 0.6),
-        KLBasedScaling(lmin, lmax, 0.7),
-        KLBasedScaling(lmin, lmax, 0.8),
-        KLBasedScaling(lmin, lmax, 0.9),
-        NoScaling((streamsimulator.npairs*(1.0/10.0)).toInt),
-        NoScaling((streamsimulator.npairs*(1.0/5.0)).toInt),
-        NoScaling((streamsimulator.npairs*(1.0/4.0)).toInt),
-        NoScaling((streamsimulator.npairs*(1.0/3.0)).toInt),
-        NoScaling((streamsimulator.npairs*(1.0/2.0)).toInt)
-      )
-
-
-      for {
-        scalingstrategy <- scalingstrategies.par
-      } {
-        for{
-          banditConstructor <- banditConstructors.par
-        } {
-          val bandit = banditConstructor(streamsimulator.copy(), reward, scalingstrategy, scalingstrategy.k)
-
-          var allgains: linalg.Vector[Double] = linalg.Vector((1 to streamsimulator.nbatches).map(x => 0.0).toArray)
-          var allks: linalg.Vector[Double] = linalg.Vector((1 to streamsimulator.nbatches).map(x => 0.0).toArray)
-          var allcpu: linalg.Vector[Double] = linalg.Vector((1 to streamsimulator.nbatches).map(x => 0.0).toArray)
-
-          val reps = if(bandit.name.contains("Exp3") & streamsimulator.npairs > 500) 1 else nRep
-          for {
-            rep <- 0 until reps
-          } {
-            bandit.reset
-            if (rep % 10 == 0) info(s"Reached rep $rep with bandit ${bandit.name}, ${scalingstrategy.name}")
-            val (gains, ks, cpu) = fullrunnerGainsKsCPU(bandit, Array[Double](), Array[Int](), Array[Double]())
-            //println(s"${bandit.name}")
-            allgains = allgains +:+ (breeze.linalg.Vector(gains) *:* (1.0/reps))
-            allks = allks +:+ (breeze.linalg.Vector(ks.map(_.toDouble)) *:* (1.0/reps))
-            allcpu = allcpu +:+ (breeze.linalg.Vector(cpu.map(_.toDouble)) *:* (1.0/reps))
-          }
-
-          for{
-            step <- 0 until allgains.length
-          }{
-            val summary = ExperimentSummary(attributes)
-            // this is the list of all the data possible we can record, "attributes" is usually a subset of it
-            // val attributes = List("bandit","dataset","action","reward","scaling","windowSize","stepSize",
-            // "delta","gamma","k","banditk","narms","gain","matrixdiff","cpuTime","wallTime","iteration","nrep")
-            summary.add("bandit", bandit.name)
-            summary.add("dataset", bandit.stream.dataset.id)
-            summary.add("npairs", bandit.stream.npairs)
-            summary.add("nbatches", bandit.stream.nbatches)
-            summary.add("scalingstrategy", bandit.scalingstrategy.name)
-            summary.add("k",  "%.2f".format(allks(step)))
-            summary.add("gain",  "%.2f".format(allgains(step)))
-            //summary.add("confidence", allconfs(step))
-            //summary.add("gamma", bandit.scalingstrategy.gamma)
-            summary.add("cputime", "%.4f".format(allcpu(step)))
-            summary.add("iteration", step)
-            summary.write(summaryPath)
-          }
-        }
+    // The names of the bandits, from prototypes on the first data set
+    val names: Vector[String] = {
+      val prototype = CachedStreamSimulator(data.head)
+      banditConstructors.map(_(prototype, reward, NoScaling(1), 1).name)
+    }
 
+    // The number of pairs of a data set is its number of dimensions (the data sets are caches, i.e., one column per
+    // pair). The simulators are built in each repetition, so the data sets are only loaded while they are used.
+    def scalingstrategies(lmax: Int): Seq[ScalingStrategy] = Seq(
+      KLBasedScaling(lmin, lmax, 0.1),
+      KLBasedScaling(lmin, lmax, 0.2),
+      KLBasedScaling(lmin, lmax, 0.3),
+      KLBasedScaling(lmin, lmax, 0.4),
+      KLBasedScaling(lmin, lmax, 0.5),
+      KLBasedScaling(lmin, lmax, 0.6),
+      KLBasedScaling(lmin, lmax, 0.7),
+      KLBasedScaling(lmin, lmax, 0.8),
+      KLBasedScaling(lmin, lmax, 0.9),
+      NoScaling((lmax*(1.0/10.0)).toInt),
+      NoScaling((lmax*(1.0/5.0)).toInt),
+      NoScaling((lmax*(1.0/4.0)).toInt),
+      NoScaling((lmax*(1.0/3.0)).toInt),
+      NoScaling((lmax*(1.0/2.0)).toInt)
+    )
+
+    val configurations = for {
+      d <- data
+      scalingstrategy <- scalingstrategies(d.nDim)
+      b <- banditConstructors.indices
+    } yield (d, scalingstrategy, b)
+
+    // Exp3 is too slow with many arms: a single repetition. The repetitions cost more with more arms.
+    scheduler.run(configurations, 3)(c => if(names(c._3).contains("Exp3") & c._1.nDim > 500) 1 else nRep, _._1.nDim) {
+      case ((d, scalingstrategy, b), rep) =>
+        // Each repetition has its own strategy, which starts from its initial k
+        val strategy = scalingstrategy.fresh
+        val bandit = configure(banditConstructors(b)(CachedStreamSimulator(d), reward, strategy, strategy.k))
+        if (rep % 10 == 0) info(s"Reached rep $rep with bandit ${bandit.name}, ${scalingstrategy.name}")
+        val (gains, ks, cpu) = fullrunnerGainsKsCPU(bandit, Array[Double](), Array[Int](), Array[Double]())
+        Array(gains, ks.map(_.toDouble), cpu)
+    } { case ((d, scalingstrategy, b), Array(allgains, allks, allcpu)) =>
+      for{
+        step <- 0 until allgains.length
+      }{
+        val summary = ExperimentSummary(attributes)
+        // this is the list of all the data possible we can record, "attributes" is usually a subset of it
+        // val attributes = List("bandit","dataset","action","reward","scaling","windowSize","stepSize",
+        // "delta","gamma","k","banditk","narms","gain","matrixdiff","cpuTime","wallTime","iteration","nrep")
+        summary.add("bandit", names(b))
+        summary.add("dataset", d.id)
+        summary.add("npairs", d.nDim)
+        summary.add("nbatches", d.n)
+        summary.add("scalingstrategy", scalingstrategy.name)
+        summary.add("k", allks(step), "%.2f")
+        summary.add("gain", allgains(step), "%.2f")
+        //summary.add("confidence", allconfs(step))
+        //summary.add("gamma", bandit.scalingstrategy.gamma)
+        summary.add("cputime", allcpu(step), "%.4f")
+        summary.add("iteration", step)
+        summary.write(summaryPath)
       }
-
     }
 
     info(s"End of experiment ${this.getClass.getSimpleName} - ${formatter.format(java.util.Calendar.getInstance().getTime)}")
@@ -16,7 +16,6 @@
  */
 package com.edouardfouche.experiments
 
-import breeze.linalg
 import breeze.stats.distributions.{RandBasis, ThreadLocalRandomGenerator}
 import com.edouardfouche.monitoring.bandits.Bandit
 import com.edouardfouche.monitoring.bandits.adversarial._
@@ -111,64 +110,50 @@ object BanditStaticK extends BanditExperiment {
     info(s"reward: ${reward.name}")
     info(s"nRep: ${nRep}")
 
-    for {
+    val configurations = for {
       generator <- generators
-    } {
-      val scalingstrategy = scalingstrategyinput(generator.d)
-      info(s"scalingstrategy: ${scalingstrategy.name}")
-
-      val id= generator.id
-
-      info(s"Computing simulators...")
-      val simulators = (0 until nRep).par.map{x =>
-        val rand = new RandBasis(new ThreadLocalRandomGenerator(new MersenneTwister(x)))
-        CachedStreamSimulator(InternalDataRef(id, generator.generate(rand), "cache"))
-      }.toArray
-
+      scalingstrategy = scalingstrategyinput(generator.d)
+      simulators = {
+        info(s"scalingstrategy: ${scalingstrategy.name}")
+        info(s"Computing simulators...")
+        (0 until nRep).par.map{x =>
+          val rand = new RandBasis(new ThreadLocalRandomGenerator(new MersenneTwister(x)))
+          CachedStreamSimulator(InternalDataRef(generator.id, generator.generate(rand), "cache"))
+        }.toArray
+      }
+      banditConstructor <- banditConstructors
+    } yield (generator, scalingstrategy, simulators, banditConstructor)
+
+    scheduler.run(configurations, 3)(_ => nRep) { case ((generator, scalingstrategy, simulators, banditConstructor), rep) =>
+      val strategy = scalingstrategy.fresh // each repetition has its own strategy
+      val bandit = configure(banditConstructor(simulators(rep).copy(), reward, strategy, scalingstrategy.lmax))
+      val (gains, ks, cpu) = fullrunnerGainsKsCPU(bandit, Array[Double](), Array[Int](), Array[Double]())
+      if (rep % 10 == 0) info(s"Reached rep $rep with bandit ${bandit.name}, ${scalingstrategy.name}")
+      Array(gains, ks.map(_.toDouble), cpu)
+    } { case ((generator, scalingstrategy, simulators, banditConstructor), Array(allgains, allks, allcpu)) =>
+      val bandit = configure(banditConstructor(simulators(0), reward, scalingstrategy, scalingstrategy.lmax))
       for{
-        banditConstructor <- banditConstructors.zipWithIndex.par
-      } {
-        var allgains: linalg.Vector[Double] = linalg.Vector((1 to simulators(0).nbatches).map(x => 0.0).toArray)
-        var allks: linalg.Vector[Double] = linalg.Vector((1 to simulators(0).nbatches).map(x => 0.0).toArray)
-        var allcpu: linalg.Vector[Double] = linalg.Vector((1 to simulators(0).nbatches).map(x => 0.0).toArray)
-
-        for {
-          rep <- 0 until nRep
-        } {
-          val bandit = banditConstructor._1(simulators(rep).copy(), reward, scalingstrategy, scalingstrategy.lmax)
-          val (gains, ks, cpu) = fullrunnerGainsKsCPU(bandit, Array[Double](), Array[Int](), Array[Double]())
-          if (rep % 10 == 0) info(s"Reached rep $rep with bandit ${bandit.name}, ${scalingstrategy.name}")
-          allgains = allgains +:+ (breeze.linalg.Vector(gains) *:* (1.0 / nRep))
-          allks = allks +:+ (breeze.linalg.Vector(ks.map(_.toDouble)) *:* (1.0 / nRep))
-          allcpu = allcpu +:+ (breeze.linalg.Vector(cpu.map(_.toDouble)) *:* (1.0 / nRep))
-        }
-
-        val bandit = banditConstructor._1(simulators(0), reward, scalingstrategy, scalingstrategy.lmax)
-        for{
-          step <- 0 until allgains.length
-        }{
-          val summary = ExperimentSummary(attributes)
-          // this is the list of all the data possible we can record, "attributes" is usually a subset of it
-          // val attributes = List("bandit","dataset","action","reward","scaling","windowSize","stepSize",
-          // "delta","gamma","k","banditk","narms","gain","matrixdiff","cpuTime","wallTime","iteration","nrep")
-          summary.add("bandit", bandit.name)
-          summary.add("dataset", bandit.stream.dataset.id)
-          summary.add("scalingstrategy", scalingstrategy.name)
-          summary.add("generator", generator.id)
-          summary.add("k",  "%.2f".format(allks(step)))
-          summary.add("gain",  "%.2f".format(allgains(step)))
-          //summary.add("confidence", allconfs(step))
-          //summary.add("gamma", bandit.scalingstrategy.gamma)
-          //summary.add("delta", bandit.scalingstrategy.delta)
-          summary.add("cputime", "%.4f".format(allcpu(step)))
-          summary.add("iteration", step)
-          summary.write(summaryPath)
-        }
+        step <- 0 until allgains.length
+      }{
+        val summary = ExperimentSummary(attributes)
+        // this is the list of all the data possible we can record, "attributes" is usually a subset of it
+        // val attributes = List("bandit","dataset","action","reward","scaling","windowSize","stepSize",
+        // "delta","gamma","k","banditk","narms","gain","matrixdiff","cpuTime","wallTime","iteration","nrep")
+        summary.add("bandit", bandit.name)
+        summary.add("dataset", bandit.stream.dataset.id)
+        summary.add("scalingstrategy", scalingstrategy.name)
+        summary.add("generator", generator.id)
+        summary.add("k", allks(step), "%.2f")
+        summary.add("gain", allgains(step), "%.2f")
+        //summary.add("confidence", allconfs(step))
+        //summary.add("gamma", bandit.scalingstrategy.gamma)
+        //summary.add("delta", bandit.scalingstrategy.delta)
+        summary.add("cputime", allcpu(step), "%.4f")
+        summary.add("iteration", step)
+        summary.write(summaryPath)
       }
     }
 
-
-
     info(s"End of experiment ${this.getClass.getSimpleName} - ${formatter.format(java.util.Calendar.getInstance().getTime)}")
   }
 }
@@ -16,7 +16,6 @@
  */
 package com.edouardfouche.experiments
 
-import breeze.linalg
 import breeze.stats.distributions.{RandBasis, ThreadLocalRandomGenerator}
 import com.edouardfouche.monitoring.bandits.adversarial._
 import com.edouardfouche.monitoring.bandits.nonstationary.MPTS_ADWIN
@@ -114,92 +113,41 @@ object BanditStaticOptimistic extends BanditSyntheticExperiment {
     }.toArray
 
 
-    for {
-      scalingstrategy <- scalingstrategies.par
-    } {
-      // Pessimistic phase
+    // The pessimistic and the optimistic variant of each bandit
+    val configurations = for {
+      scalingstrategy <- scalingstrategies.toSeq
+      optimistic <- Seq(false, true)
+      banditConstructor <- banditConstructors
+    } yield (scalingstrategy, optimistic, banditConstructor)
+
+    scheduler.run(configurations, 3)(_ => nRep) { case ((scalingstrategy, optimistic, banditConstructor), rep) =>
+      val strategy = scalingstrategy.fresh // each repetition has its own strategy
+      val bandit = configure(banditConstructor(simulators(rep).copy(), reward, strategy, lmax))
+      if(!optimistic) bandit.disable_optimistic
+      val (gains, ks, cpu) = fullrunnerGainsKsCPU(bandit, Array[Double](), Array[Int](), Array[Double]())
+      if (rep % 10 == 0) info(s"Reached rep $rep with bandit ${bandit.name}, ${scalingstrategy.name}")
+      Array(gains, ks.map(_.toDouble), cpu)
+    } { case ((scalingstrategy, optimistic, banditConstructor), Array(allgains, allks, allcpu)) =>
+      val bandit = configure(banditConstructor(simulators(0), reward, scalingstrategy, lmax))
       for{
-        banditConstructor <- banditConstructors.zipWithIndex.par
-      } {
-        var allgains: linalg.Vector[Double] = linalg.Vector((1 to simulators(0).nbatches).map(x => 0.0).toArray)
-        var allks: linalg.Vector[Double] = linalg.Vector((1 to simulators(0).nbatches).map(x => 0.0).toArray)
-        var allcpu: linalg.Vector[Double] = linalg.Vector((1 to simulators(0).nbatches).map(x => 0.0).toArray)
-
-        for {
-          rep <- 0 until nRep
-        } {
-          val bandit = banditConstructor._1(simulators(rep).copy(), reward, scalingstrategy, lmax)
-          bandit.disable_optimistic
-          val (gains, ks, cpu) = fullrunnerGainsKsCPU(bandit, Array[Double](), Array[Int](), Array[Double]())
-          if (rep % 10 == 0) info(s"Reached rep $rep with bandit ${bandit.name}, ${scalingstrategy.name}")
-          allgains = allgains +:+ (breeze.linalg.Vector(gains) *:* (1.0 / nRep))
-          allks = allks +:+ (breeze.linalg.Vector(ks.map(_.toDouble)) *:* (1.0 / nRep))
-          allcpu = allcpu +:+ (breeze.linalg.Vector(cpu.map(_.toDouble)) *:* (1.0 / nRep))
-        }
-
-        val bandit = banditConstructor._1(simulators(0), reward, scalingstrategy, lmax)
-        for{
-          step <- 0 until allgains.length
-        }{
-          val summary = ExperimentSummary(attributes)
-          // this is the list of all the data possible we can record, "attributes" is usually a subset of it
-          // val attributes = List("bandit","dataset","action","reward","scaling","windowSize","stepSize",
-          // "delta","gamma","k","banditk","narms","gain","matrixdiff","cpuTime","wallTime","iteration","nrep")
-          summary.add("bandit", bandit.name)
-          summary.add("optimistic", false)
-          summary.add("dataset", bandit.stream.dataset.id)
-          summary.add("scalingstrategy", bandit.scalingstrategy.name)
-          summary.add("k",  "%.2f".format(allks(step)))
-          summary.add("gain",  "%.2f".format(allgains(step)))
-          //summary.add("confidence", allconfs(step))
-          //summary.add("gamma", bandit.scalingstrategy.gamma)
-          //summary.add("delta", bandit.scalingstrategy.delta)
-          summary.add("cputime", "%.4f".format(allcpu(step)))
-          summary.add("iteration", step)
-          summary.write(summaryPath)
-        }
-      }
-
-      // Optimistic phase
-      for{
-        banditConstructor <- banditConstructors.zipWithIndex.par
-      } {
-        var allgains: linalg.Vector[Double] = linalg.Vector((1 to simulators(0).nbatches).map(x => 0.0).toArray)
-        var allks: linalg.Vector[Double] = linalg.Vector((1 to simulators(0).nbatches).map(x => 0.0).toArray)
-        var allcpu: linalg.Vector[Double] = linalg.Vector((1 to simulators(0).nbatches).map(x => 0.0).toArray)
-
-        for {
-          rep <- 0 until nRep
-        } {
-          val bandit = banditConstructor._1(simulators(rep).copy(), reward, scalingstrategy, lmax)
-          val (gains, ks, cpu) = fullrunnerGainsKsCPU(bandit, Array[Double](), Array[Int](), Array[Double]())
-          if (rep % 10 == 0) info(s"Reached rep $rep with bandit ${bandit.name}, ${scalingstrategy.name}")
-          allgains = allgains +:+ (breeze.linalg.Vector(gains) *:* (1.0 / nRep))
-          allks = allks +:+ (breeze.linalg.Vector(ks.map(_.toDouble)) *:* (1.0 / nRep))
-          allcpu = allcpu +:+ (breeze.linalg.Vector(cpu.map(_.toDouble)) *:* (1.0 / nRep))
-        }
-
-        val bandit = banditConstructor._1(simulators(0), reward, scalingstrategy, lmax)
-        for{
-          step <- 0 until allgains.length
-        }{
-          val summary = ExperimentSummary(attributes)
-          // this is the list of all the data possible we can record, "attributes" is usually a subset of it
-          // val attributes = List("bandit","dataset","action","reward","scaling","windowSize","stepSize",
-          // "delta","gamma","k","banditk","narms","gain","matrixdiff","cpuTime","wallTime","iteration","nrep")
-          summary.add("bandit", bandit.name)
-          summary.add("optimistic", true)
-          summary.add("dataset", bandit.stream.dataset.id)
-          summary.add("scalingstrategy", bandit.scalingstrategy.name)
-          summary.add("k",  "%.2f".format(allks(step)))
-          summary.add("gain",  "%.2f".format(allgains(step)))
-          //summary.add("confidence", allconfs(step))
-          //summary.add("gamma", bandit.scalingstrategy.gamma)
-          //summary.add("delta", bandit.scalingstrategy.delta)
-          summary.add("cputime", "%.4f".format(allcpu(step)))
-          summary.add("iteration", step)
-          summary.write(summaryPath)
-        }
+        step <- 0 until allgains.length
+      }{
+        val summary = ExperimentSummary(attributes)
+        // this is the list of all the data possible we can record, "attributes" is usually a subset of it
+        // val attributes = List("bandit","dataset","action","reward","scaling","windowSize","stepSize",
+        // "delta","gamma","k","banditk","narms","gain","matrixdiff","cpuTime","wallTime","iteration","nrep")
+        summary.add("bandit", bandit.name)
+        summary.add("optimistic", optimistic)
+        summary.add("dataset", bandit.stream.dataset.id)
+        summary.add("scalingstrategy", bandit.scalingstrategy.name)
+        summary.add("k", allks(step), "%.2f")
+        summary.add("gain", allgains(step), "%.2f")
+        //summary.add("confidence", allconfs(step))
+        //summary.add("gamma", bandit.scalingstrategy.gamma)
+        //summary.add("delta", bandit.scalingstrategy.delta)
+        summary.add("cputime", allcpu(step), "%.4f")
+        summary.add("iteration", step)
+        summary.write(summaryPath)
       }
     }
 
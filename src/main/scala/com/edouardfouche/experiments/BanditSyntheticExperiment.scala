@@ -16,7 +16,6 @@
  */
 package com.edouardfouche.experiments
 
-import breeze.linalg
 import breeze.stats.distributions.{RandBasis, ThreadLocalRandomGenerator}
 import com.edouardfouche.monitoring.bandits.adversarial._
 import com.edouardfouche.monitoring.bandits.nonstationary.{CUCB_ADWIN, MPKLUCB_ADWIN, MPTS_ADWIN}
@@ -85,47 +84,37 @@ trait BanditSyntheticExperiment extends BanditExperiment {
       CachedStreamSimulator(InternalDataRef(id, generator.generate(rand), "cache"))
     }.toArray
 
-    for {
-      scalingstrategy <- scalingstrategies.par
-    } {
-      for{
-        banditConstructor <- banditConstructors.zipWithIndex.par
-      } {
-        var allgains: linalg.Vector[Double] = linalg.Vector((1 to simulators(0).nbatches).map(x => 0.0).toArray)
-        var allks: linalg.Vector[Double] = linalg.Vector((1 to simulators(0).nbatches).map(x => 0.0).toArray)
-        var allcpu: linalg.Vector[Double] = linalg.Vector((1 to simulators(0).nbatches).map(x => 0.0).toArray)
-
-        for {
-          rep <- 0 until nRep
-        } {
-          val bandit = banditConstructor._1(simulators(rep).copy(), reward, scalingstrategy, lmax)
-          val (gains, ks, cpu) = fullrunnerGainsKsCPU(bandit, Array[Double](), Array[Int](), Array[Double]())
-          if (rep % 10 == 0) info(s"Reached rep $rep with bandit ${bandit.name}, ${scalingstrategy.name}")
-          allgains = allgains +:+ (breeze.linalg.Vector(gains) *:* (1.0 / nRep))
-          allks = allks +:+ (breeze.linalg.Vector(ks.map(_.toDouble)) *:* (1.0 / nRep))
-          allcpu = allcpu +:+ (breeze.linalg.Vector(cpu.map(_.toDouble)) *:* (1.0 / nRep))
-        }
+    val configurations = for {
+      scalingstrategy <- scalingstrategies.toSeq
+      banditConstructor <- banditConstructors
+    } yield (scalingstrategy, banditConstructor)
 
-        val bandit = banditConstructor._1(simulators(0), reward, scalingstrategy, lmax)
-        for{
-          step <- 0 until allgains.length
-        }{
-          val summary = ExperimentSummary(attributes)
-          // this is the list of all the data possible we can record, "attributes" is usually a subset of it
-          // val attributes = List("bandit","dataset","action","reward","scaling","windowSize","stepSize",
-          // "delta","gamma","k","banditk","narms","gain","matrixdiff","cpuTime","wallTime","iteration","nrep")
-          summary.add("bandit", bandit.name)
-          summary.add("dataset", bandit.stream.dataset.id)
-          summary.add("scalingstrategy", bandit.scalingstrategy.name)
-          summary.add("k",  "%.2f".format(allks(step)))
-          summary.add("gain",  "%.2f".format(allgains(step)))
-          //summary.add("confidence", allconfs(step))
-          //summary.add("gamma", bandit.scalingstrategy.gamma)
-          //summary.add("delta", bandit.scalingstrategy.delta)
-          summary.add("cputime", "%.4f".format(allcpu(step)))
-          summary.add("iteration", step)
-          summary.write(summaryPath)
-        }
+    scheduler.run(configurations, 3)(_ => nRep) { case ((scalingstrategy, banditConstructor), rep) =>
+      val strategy = scalingstrategy.fresh // each repetition has its own strategy
+      val bandit = configure(banditConstructor(simulators(rep).copy(), reward, strategy, lmax))
+      val (gains, ks, cpu) = fullrunnerGainsKsCPU(bandit, Array[Double](), Array[Int](), Array[Double]())
+      if (rep % 10 == 0) info(s"Reached rep $rep with bandit ${bandit.name}, ${scalingstrategy.name}")
+      Array(gains, ks.map(_.toDouble), cpu)
+    } { case ((scalingstrategy, banditConstructor), Array(allgains, allks, allcpu)) =>
+      val bandit = configure(banditConstructor(simulators(0), reward, scalingstrategy, lmax))
+      for{
+        step <- 0 until allgains.length
+      }{
+        val summary = ExperimentSummary(attributes)
+        // this is the list of all the data possible we can record, "attributes" is usually a subset of it
+        // val attributes = List("bandit","dataset","action","reward","scaling","windowSize","stepSize",
+        // "delta","gamma","k","banditk","narms","gain","matrixdiff","cpuTime","wallTime","iteration","nrep")
+        summary.add("bandit", bandit.name)
+        summary.add("dataset", bandit.stream.dataset.id)
+        summary.add("scalingstrategy", bandit.scalingstrategy.name)
+        summary.add("k", allks(step), "%.2f")
+        summary.add("gain", allgains(step), "%.2f")
+        //summary.add("confidence", allconfs(step))
+        //summary.add("gamma", bandit.scalingstrategy.gamma)
+        //summary.add("delta", bandit.scalingstrategy.delta)
+        summary.add("cputime", allcpu(step), "%.4f")
+        summary.add("iteration", step)
+        summary.write(summaryPath)
       }
     }
     info(s"End of experiment ${this.getClass.getSimpleName} - ${formatter.format(java.util.Calendar.getInstance().getTime)}")
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.experiments
+
+import java.io._
+import java.nio.charset.StandardCharsets
+import java.nio.{ByteBuffer, ByteOrder}
+import java.util.zip.{Deflater, Inflater}
+
+import scala.collection.mutable
+
+/**
+  * A columnar binary format for the summaries of the experiments, much smaller and faster to load than csv files.
+  * It can be read with ColumnarResults.read, or from Python with visualize/smabresults.py.
+  *
+  * The rows are grouped into chunks of (at most) chunkSize rows. Within a chunk, the values are stored column by
+  * column. The type of a column follows the type of its values, and is chosen once per column by a Writer (with the
+  * first chunk that has a value in the column), so that it does not change from one chunk to the next:
+  * - int64, for integers (Int or Long), missing values are Long.MinValue,
+  * - float64, for numbers (Double or Float, and the integers of the same column, or Formatted), missing values are NaN,
+  * - dictionary-encoded strings otherwise: the distinct strings, and the int32 code of each value (-1 if missing).
+  * The strings are always stored as strings (e.g., "007"): the numbers must be given as numbers.
+  *
+  * Layout (little-endian): the magic string "SMABRSLT" (8 bytes, ASCII) and the version (int32), followed by the
+  * chunks. A chunk is the number of rows (int32), the number of columns (int32), the size of the payload (int32), the
+  * size of the compressed payload (int32) and the payload, compressed with zlib. The payload is, for each column, its
+  * name (int32 length + UTF-8 bytes), its type (1 byte) and its values:
+  * - int64 (type 0): nrows int64,
+  * - float64 (type 1): nrows float64,
+  * - dictionary (type 2): the number of strings (int32), the strings (int32 length + UTF-8 bytes), nrows int32 codes.
+  * As every chunk describes its columns, a file can be appended to, even with other attributes.
+  */
+object ColumnarResults {
+  val magic: String = "SMABRSLT"
+  val version: Int = 1
+  val extension: String = ".smabr"
+  val chunkSize: Int = 1 << 16
+
+  val Int64: Byte = 0
+  val Float64: Byte = 1
+  val Dictionary: Byte = 2
+
+  val MissingInt64: Long = Long.MinValue
+
+  /**
+    * A number written with a format, e.g., "%.2f", in the csv files (always with a dot as decimal separator), and as
+    * the number that it shows in the columnar files
+    */
+  case class Formatted(value: Double, format: String) {
+    override def toString: String = format.formatLocal(java.util.Locale.ROOT, value)
+    def number: Double = toString.toDouble
+  }
+
+  /**
+    * The path of the columnar file corresponding to a csv file
+    */
+  def path(csvpath: String): String = csvpath.stripSuffix(".csv") + extension
+
+  /**
+    * Writes rows in a columnar file, chunk by chunk. This is not thread-safe (see ResultSink).
+    * @param path the location of the file (appended to if it exists)
+    * @param chunkSize the number of rows per chunk
+    */
+  class Writer(val path: String, val chunkSize: Int = ColumnarResults.chunkSize) {
+    require(chunkSize >= 1, "chunkSize must be at least 1")
+    private var attributes: Array[String] = Array()
+    private val types = mutable.HashMap[String, Byte]() // the type of each column, once it has a value
+    private val rows = new Array[Array[Any]](chunkSize)
+    private var nrows = 0
+
+    private val stream: OutputStream = {
+      val file = new File(path)
+      val exists = file.exists && file.length > 0
+      val stream = new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16)
+      if(!exists) {
+        val header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN)
+        header.put(magic.getBytes(StandardCharsets.US_ASCII)).putInt(version)
+        stream.write(header.array())
+      }
+      stream
+    }
+
+    /**
+      * Add a row. The chunk is written when it is full, or when the attributes change.
+      * @param attributes the name of each column
+      * @param values the value of each column (null if missing)
+      */
+    def add(attributes: Array[String], values: Array[Any]): Unit = {
+      require(values.length == attributes.length, "There must be one value per attribute")
+      if(!(attributes sameElements this.attributes)) {
+        writeChunk()
+        this.attributes = attributes
+      }
+      rows(nrows) = values
+      nrows += 1
+      if(nrows == chunkSize) writeChunk()
+    }
+
+    /**
+      * Write the pending rows (as a possibly smaller chunk), and flush the file
+      */
+    def flush(): Unit = {
+      writeChunk()
+      stream.flush()
+    }
+
+    def close(): Unit = {
+      flush()
+      stream.close()
+    }
+
+    private def writeChunk(): Unit = {
+      if(nrows > 0) {
+        val columns = attributes.indices.map { c =>
+          val name = attributes(c)
+          val values = Array.tabulate[Any](nrows)(rows(_)(c))
+          if(!types.contains(name)) kind(values).foreach(types(name) = _)
+          encode(name, types.getOrElse(name, Float64), values) // only missing values so far: NaN
+        }
+        val payload = ByteBuffer.allocate(columns.map(_.length).sum)
+        columns.foreach(payload.put)
+        val compressed = deflate(payload.array())
+        val header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN)
+        header.putInt(nrows).putInt(attributes.length).putInt(payload.capacity).putInt(compressed.length)
+        stream.write(header.array())
+        stream.write(compressed)
+        java.util.Arrays.fill(rows.asInstanceOf[Array[AnyRef]], 0, nrows, null)
+        nrows = 0
+      }
+    }
+  }
+
+  // The type of a column, given by its values (None if they are all missing)
+  private def kind(values: Array[Any]): Option[Byte] = {
+    var kind: Option[Byte] = None
+    values.foreach {
+      case null =>
+      case _: Int | _: Long => if(kind.isEmpty) kind = Some(Int64)
+      case _: Double | _: Float | _: Formatted => if(!kind.contains(Dictionary)) kind = Some(Float64)
+      case _ => kind = Some(Dictionary)
+    }
+    kind
+  }
+
+  // Encode a column: its name, its type and its values
+  private def encode(name: String, kind: Byte, values: Array[Any]): Array[Byte] = {
+    val n = values.length
+    def mismatch(v: Any) = throw new Error(s"The column $name of the columnar results cannot hold the value $v")
+
+    val namebytes = name.getBytes(StandardCharsets.UTF_8)
+    if(kind == Dictionary) {
+      val dictionary = mutable.HashMap[String, Int]()
+      val strings = mutable.ArrayBuffer[String]()
+      val codes = values.map { v =>
+        if(v == null) -1
+        else dictionary.getOrElseUpdate(v.toString, { strings += v.toString; strings.length - 1 })
+      }
+      val entries = strings.map(_.getBytes(StandardCharsets.UTF_8)).toArray
+      val buffer = ByteBuffer.allocate(4 + namebytes.length + 1 + 4 + entries.map(4 + _.length).sum + 4 * n)
+        .order(ByteOrder.LITTLE_ENDIAN)
+      buffer.putInt(namebytes.length).put(namebytes).put(kind).putInt(entries.length)
+      entries.foreach(e => buffer.putInt(e.length).put(e))
+      codes.foreach(buffer.putInt)
+      buffer.array()
+    } else {
+      val buffer = ByteBuffer.allocate(4 + namebytes.length + 1 + 8 * n).order(ByteOrder.LITTLE_ENDIAN)
+      buffer.putInt(namebytes.length).put(namebytes).put(kind)
+      if(kind == Int64) values.foreach {
+        case null => buffer.putLong(MissingInt64)
+        case v: Int => buffer.putLong(v)
+        case v: Long => buffer.putLong(v)
+        case v => mismatch(v)
+      } else values.foreach {
+        case null => buffer.putDouble(Double.NaN)
+        case v: Int => buffer.putDouble(v)
+        case v: Long => buffer.putDouble(v.toDouble)
+        case v: Double => buffer.putDouble(v)
+        case v: Float => buffer.putDouble(v)
+        case v: Formatted => buffer.putDouble(v.number)
+        case v => mismatch(v)
+      }
+      buffer.array()
+    }
+  }
+
+  private def deflate(bytes: Array[Byte]): Array[Byte] = {
+    val deflater = new Deflater(Deflater.BEST_SPEED)
+    try {
+      deflater.setInput(bytes)
+      deflater.finish()
+      val out = new ByteArrayOutputStream(bytes.length / 4 + 64)
+      val buffer = new Array[Byte](1 << 16)
+      while(!deflater.finished) out.write(buffer, 0, deflater.deflate(buffer))
+      out.toByteArray
+    } finally deflater.end()
+  }
+
+  /**
+    * Read a columnar file
+    * @param path the location of the file
+    * @return the values of each column (a Long, a Double or a String, null if missing), in the order of the rows.
+    *         The columns missing in some chunks are null for the rows of these chunks.
+    */
+  def read(path: String): mutable.LinkedHashMap[String, Array[Any]] = {
+    val in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16))
+    try {
+      val header = new Array[Byte](8)
+      in.readFully(header)
+      if(new String(header, StandardCharsets.US_ASCII) != magic) throw new Error(s"$path is not a columnar result file")
+      val fileversion = Integer.reverseBytes(in.readInt())
+      if(fileversion != version) throw new Error(s"Unsupported version $fileversion of $path")
+
+      val chunks = mutable.ArrayBuffer[(Int, Seq[(String, Array[Any])])]()
+      var eof = false
+      while(!eof) {
+        val first = in.read() // the end of the file can only be at the start of a chunk
+        if(first < 0) eof = true
+        else {
+          val nrows = first | (in.read() << 8) | (in.read() << 16) | (in.read() << 24)
+          val ncols = Integer.reverseBytes(in.readInt())
+          val size = Integer.reverseBytes(in.readInt())
+          val compressed = new Array[Byte](Integer.reverseBytes(in.readInt()))
+          in.readFully(compressed)
+          chunks += ((nrows, decode(inflate(compressed, size), nrows, ncols)))
+        }
+      }
+
+      val total = chunks.map(_._1).sum
+      val columns = mutable.LinkedHashMap[String, Array[Any]]()
+      var offset = 0
+      for((nrows, chunk) <- chunks) {
+        for((name, values) <- chunk) {
+          System.arraycopy(values, 0, columns.getOrElseUpdate(name, new Array[Any](total)), offset, nrows)
+        }
+        offset += nrows
+      }
+      columns
+    } finally in.close()
+  }
+
+  private def inflate(compressed: Array[Byte], size: Int): Array[Byte] = {
+    val inflater = new Inflater()
+    try {
+      inflater.setInput(compressed)
+      val bytes = new Array[Byte](size)
+      var position = 0
+      while(position < size && !inflater.finished) position += inflater.inflate(bytes, position, size - position)
+      if(position != size) throw new Error("Corrupted chunk in columnar result file")
+      bytes
+    } finally inflater.end()
+  }
+
+  private def decode(payload: Array[Byte], nrows: Int, ncols: Int): Seq[(String, Array[Any])] = {
+    val buffer = ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN)
+    def string(): String = {
+      val bytes = new Array[Byte](buffer.getInt)
+      buffer.get(bytes)
+      new String(bytes, StandardCharsets.UTF_8)
+    }
+    (0 until ncols).map { _ =>
+      val name = string()
+      val values: Array[Any] = buffer.get match {
+        case Int64 => Array.fill[Any](nrows) { val v = buffer.getLong; if(v == MissingInt64) null else v }
+        case Float64 => Array.fill[Any](nrows)(buffer.getDouble)
+        case Dictionary =>
+          val entries = Array.fill(buffer.getInt)(string())
+          Array.fill[Any](nrows) { val code = buffer.getInt; if(code < 0) null else entries(code) }
+        case t => throw new Error(s"Unknown column type $t in columnar result file")
+      }
+      (name, values)
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.experiments
+
+import java.util.concurrent.atomic.{AtomicInteger, AtomicReference}
+import java.util.concurrent._
+
+import scala.collection.JavaConverters._
+
+/**
+  * Runs the repetitions of the configurations of an experiment (e.g., data set x scaling strategy x bandit) as
+  * independent tasks, on a pool of a given size, and averages the series they produce step by step.
+  *
+  * The tasks wait in a single queue, ordered by decreasing estimated cost, so that the long ones do not end up alone
+  * at the end of the run. The first repetitions of the configurations come first (by decreasing prior cost). As soon
+  * as the first repetition of a configuration is done, its duration gives the estimated cost of the other repetitions
+  * of this configuration, which join the queue: a thread never waits while there are tasks to run.
+  *
+  * Each worker thread sums the series of the repetitions it runs in its own accumulators (one per configuration). When
+  * the last repetition of a configuration is done, the accumulators of this configuration are merged into the means.
+  *
+  * @param parallelism the number of threads
+  */
+class ExperimentScheduler(val parallelism: Int = Runtime.getRuntime.availableProcessors()) {
+  require(parallelism >= 1, "parallelism must be at least 1")
+
+  // The sums of the series of some repetitions of a configuration, confined to a worker thread
+  private class Accumulator(nseries: Int) {
+    var sums: Array[Array[Double]] = Array.fill(nseries)(Array[Double]())
+
+    def add(series: Array[Array[Double]]): Unit = {
+      require(series.length == sums.length, "The number of series must be the same for every repetition")
+      var s = 0
+      while(s < series.length) {
+        if(series(s).length > sums(s).length) sums(s) = java.util.Arrays.copyOf(sums(s), series(s).length)
+        var step = 0
+        while(step < series(s).length) {
+          sums(s)(step) += series(s)(step)
+          step += 1
+        }
+        s += 1
+      }
+    }
+  }
+
+  /**
+    * Run the repetitions of some configurations, and average their series
+    * @param configurations the configurations, e.g., tuples (data set, scaling strategy, bandit constructor)
+    * @param nseries the number of series produced by a repetition (e.g., 3 for the gains, the ks and the cpu times)
+    * @param nRep the number of repetitions of a configuration
+    * @param cost the prior estimated cost of a repetition of a configuration (only the relative values matter)
+    * @param repetition run a repetition of a configuration, given its index, and return its series, e.g., the gain at
+    *                   each step. The series of the repetitions may have different lengths (the missing steps count
+    *                   as 0).
+    * @param done called with each configuration and the mean of each of its series, once all its repetitions are done.
+    *             The calls never overlap (e.g., to write the results of a configuration in a row).
+    */
+  def run[C](configurations: Seq[C], nseries: Int)
+            (nRep: C => Int, cost: C => Double = (_: C) => 1.0)
+            (repetition: (C, Int) => Array[Array[Double]])
+            (done: (C, Array[Array[Double]]) => Unit): Unit = {
+    val nReps = configurations.map(nRep).toArray
+    require(nReps.forall(_ >= 1), "nRep must be at least 1")
+    // The tasks, by phase (the first repetitions first) then by decreasing cost
+    val queue = new PriorityBlockingQueue[Runnable]()
+    val pool = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS, queue)
+    try {
+      val remaining = nReps.map(new AtomicInteger(_))
+      val accumulators = configurations.map(_ => new ConcurrentLinkedQueue[Accumulator]()).toArray
+      val local = new ThreadLocal[Array[Accumulator]] {
+        override def initialValue(): Array[Accumulator] = new Array[Accumulator](configurations.length)
+      }
+      val pending = new CountDownLatch(nReps.sum) // the repetitions not done yet
+      val failure = new AtomicReference[Throwable]()
+
+      class Task(val c: Int, val rep: Int, val estimate: Double) extends Runnable with Comparable[Task] {
+        def compareTo(other: Task): Int = {
+          val phase = java.lang.Boolean.compare(rep != 0, other.rep != 0)
+          if(phase != 0) phase else java.lang.Double.compare(other.estimate, estimate)
+        }
+
+        def run(): Unit = {
+          var started = false // whether the other repetitions of the configuration were queued (by the first one)
+          try {
+            if(failure.get() == null) {
+              val start = System.nanoTime()
+              val series = repetition(configurations(c), rep)
+              if(rep == 0) { // the other repetitions can start, with the duration of this one as cost
+                val duration = (System.nanoTime() - start).toDouble
+                for(r <- 1 until nReps(c)) pool.execute(new Task(c, r, duration))
+                started = true
+              }
+              accumulate(c, series)
+            }
+          } catch {
+            case e: Throwable => failure.compareAndSet(null, e)
+          } finally {
+            if(rep == 0 && !started) (1 until nReps(c)).foreach(_ => pending.countDown()) // they never run
+            pending.countDown()
+          }
+        }
+      }
+
+      def accumulate(c: Int, series: Array[Array[Double]]): Unit = {
+        val accumulator = local.get()
+        if(accumulator(c) == null) {
+          accumulator(c) = new Accumulator(nseries)
+          accumulators(c).add(accumulator(c))
+        }
+        accumulator(c).add(series)
+        // The decrement publishes the sums of this thread to the thread of the last repetition
+        if(remaining(c).decrementAndGet() == 0) {
+          val means = Array.fill(nseries)(Array[Double]())
+          val merged = new Accumulator(nseries)
+          for(a <- accumulators(c).asScala) merged.add(a.sums)
+          for(s <- 0 until nseries) means(s) = merged.sums(s).map(_ / nReps(c))
+          ExperimentScheduler.this.synchronized(done(configurations(c), means))
+        }
+      }
+
+      for(c <- configurations.indices) pool.execute(new Task(c, 0, cost(configurations(c))))
+      pending.await()
+      if(failure.get() != null) throw new Error("A repetition of the experiment failed", failure.get())
+    } finally pool.shutdown()
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.experiments
+
+import java.io.{BufferedWriter, File, FileOutputStream, OutputStreamWriter}
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.{ArrayBlockingQueue, CountDownLatch, TimeUnit}
+
+import scala.collection.mutable
+
+/**
+  * Asynchronous sink for the results of the experiments (e.g., the rows of the summaries).
+  *
+  * The rows are put in a bounded queue, drained by a single writer thread. The writer keeps a buffered stream open per
+  * file, and flushes the streams it wrote to every batchSize rows, or flushInterval milliseconds after the first row
+  * written since the last flush, whichever comes first (and at each flush() or close()). The rows of a given thread are
+  * written in the order they were given. When the queue is full, the producers wait for the writer.
+  *
+  * The rows can also go to columnar files (see ColumnarResults), which are written chunk by chunk: the rows of the last,
+  * incomplete chunk of a file are only written by flush() or close().
+  *
+  * The pending rows are written and the files are closed by close(), which is also called at shutdown.
+  */
+object ResultSink {
+  val capacity: Int = 1 << 16 // the number of rows in the queue
+  val batchSize: Int = 4096 // the maximum number of rows between two flushes
+  val flushInterval: Long = 1000 // the maximum time (in milliseconds) during which a written row is not flushed
+  val bufferSize: Int = 1 << 16
+
+  private sealed trait Message
+  private case class Row(path: String, header: Option[String], row: String) extends Message
+  private case class Record(path: String, attributes: Array[String], values: Array[Any]) extends Message
+  private case class Barrier(latch: CountDownLatch, close: Boolean) extends Message
+
+  private val queue = new ArrayBlockingQueue[Message](capacity)
+  @volatile private var failure: Throwable = _
+  @volatile private var started = false
+
+  private lazy val writer: Thread = {
+    val thread = new Thread(new Runnable { def run(): Unit = drain() }, "result-sink")
+    thread.setDaemon(true)
+    thread.start()
+    Runtime.getRuntime.addShutdownHook(new Thread(new Runnable { def run(): Unit = close() }))
+    started = true
+    thread
+  }
+
+  /**
+    * Append a row to a file (asynchronously)
+    * @param path the path of the file
+    * @param header the header, written before the first row if the file does not exist yet
+    * @param row the row, with its line terminator
+    */
+  def write(path: String, header: Option[String], row: String): Unit = {
+    check()
+    writer
+    queue.put(Row(path, header, row))
+  }
+
+  /**
+    * Append a row to a columnar file (asynchronously)
+    * @param path the path of the file
+    * @param attributes the name of each column
+    * @param values the value of each column (null if missing)
+    */
+  def write(path: String, attributes: Array[String], values: Array[Any]): Unit = {
+    check()
+    writer
+    queue.put(Record(path, attributes, values))
+  }
+
+  /**
+    * Wait until the rows given so far are written and flushed
+    */
+  def flush(): Unit = barrier(close = false)
+
+  /**
+    * Wait until the rows given so far are written, then close the files (they are opened again by later rows)
+    */
+  def close(): Unit = barrier(close = true)
+
+  private def barrier(close: Boolean): Unit = {
+    if(started) {
+      val latch = new CountDownLatch(1)
+      queue.put(Barrier(latch, close))
+      latch.await()
+    }
+    check()
+  }
+
+  private def check(): Unit = {
+    if(failure != null) throw new Error("Could not write the results", failure)
+  }
+
+  // The loop of the writer thread
+  private def drain(): Unit = {
+    val streams = mutable.Map[String, BufferedWriter]()
+    val dirty = mutable.Set[BufferedWriter]()
+    val columnar = mutable.Map[String, ColumnarResults.Writer]()
+    val batch = new java.util.ArrayList[Message](batchSize)
+
+    def open(path: String, header: Option[String]): BufferedWriter = {
+      val file = new File(path)
+      val exists = file.exists && file.length > 0
+      val stream = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8),
+        bufferSize)
+      if(!exists) header.foreach(stream.write)
+      stream
+    }
+
+    var unflushed = 0 // the number of rows written since the last flush
+    var deadline = 0L // when the rows written since the last flush must be flushed (System.nanoTime)
+
+    def flushAll(): Unit = {
+      unflushed = 0
+      try dirty.foreach(_.flush()) finally dirty.clear()
+    }
+
+    while(true) {
+      // Wait for rows, but not beyond the deadline of the unflushed ones
+      val first = if(dirty.isEmpty) queue.take()
+        else queue.poll(deadline - System.nanoTime, TimeUnit.NANOSECONDS)
+      if(first != null) {
+        batch.add(first)
+        queue.drainTo(batch, batchSize - 1)
+      }
+      var i = 0
+      while(i < batch.size) {
+        batch.get(i) match {
+          case Row(path, header, row) => if(failure == null) {
+            try {
+              val stream = streams.getOrElseUpdate(path, open(path, header))
+              stream.write(row)
+              if(dirty.isEmpty) deadline = System.nanoTime + flushInterval * 1000000
+              dirty += stream
+              unflushed += 1
+            } catch {
+              case e: Throwable => failure = e
+            }
+          }
+          case Record(path, attributes, values) => if(failure == null) {
+            try columnar.getOrElseUpdate(path, new ColumnarResults.Writer(path)).add(attributes, values) catch {
+              case e: Throwable => failure = e
+            }
+          }
+          case Barrier(latch, close) =>
+            try {
+              flushAll()
+              columnar.values.foreach(_.flush())
+              if(close) {
+                streams.values.foreach(_.close())
+                streams.clear()
+                columnar.values.foreach(_.close())
+                columnar.clear()
+              }
+            } catch {
+              case e: Throwable => if(failure == null) failure = e
+            }
+            latch.countDown()
+        }
+        i += 1
+      }
+      batch.clear()
+      if(dirty.nonEmpty && (unflushed >= batchSize || System.nanoTime - deadline >= 0)) try flushAll() catch {
+        case e: Throwable => if(failure == null) failure = e
+      }
+    }
+  }
+}
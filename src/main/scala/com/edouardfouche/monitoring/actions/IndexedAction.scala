@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.monitoring.actions
+
+import com.edouardfouche.utils.ColumnIndex
+
+/**
+  * An action that relies on an index of each column (e.g., the sorted order or the ranks of the values).
+  * A column takes part in many pairs, so its index is built once per window and shared by all the pairs computed on
+  * this window, instead of once per pair.
+  */
+trait IndexedAction extends Action {
+  /**
+    * Build the index of a column, in a window
+    * @param column the values of the column in the window (not to be modified afterwards)
+    * @param window the index of the window
+    * @param j the index of the column (the window and the column identify the index, e.g., to seed its randomness)
+    * @return the index of the column
+    */
+  def index(column: Array[Double], window: Int, j: Int): ColumnIndex = new ColumnIndex(column)
+
+  /**
+    * Compute the action between two indexed columns
+    * @param a the index of the first column
+    * @param b the index of the second column
+    * @return the result of the action (i.e., dependency score) between the two columns
+    */
+  def compute(a: ColumnIndex, b: ColumnIndex): Double
+
+  def compute(a: Array[Double], b: Array[Double]): Double = compute(index(a, 0, 0), index(b, 0, 1))
+}
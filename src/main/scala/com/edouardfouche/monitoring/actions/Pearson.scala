@@ -19,8 +19,9 @@ import de.lmu.ifi.dbs.elki.math.statistics.dependence
 
 /**
   * Compute the Pearson's Correlation Coefficient between two arrays
+  * Over a sliding window, it can also be maintained incrementally (see SlidingPearson).
   */
-object Pearson extends Action {
+object Pearson extends WindowedAction {
   val name="Pearson"
   /**
     * Compute the Pearson correlation coefficient between array "a" and array "b"
@@ -31,4 +32,6 @@ object Pearson extends Action {
   def compute(a: Array[Double], b: Array[Double]): Double = {
     dependence.CorrelationDependenceMeasure.STATIC.dependence(a,b)
   }
+
+  def sliding(npairs: Int, windowSize: Int): SlidingAction = new SlidingPearson(npairs, windowSize)
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.monitoring.actions
+
+/**
+  * Pearson's Correlation Coefficient over a sliding window, maintained incrementally for each pair of columns.
+  *
+  * For each pair, we keep the running sums Σx, Σy, Σxy, Σx², Σy² over the window, and update them by adding the rows
+  * that enter the window and removing the rows that leave it: moving a window by stepSize rows costs O(stepSize) per
+  * pair instead of O(windowSize). For numerical stability, the sums are computed on values shifted by a reference
+  * point of the pair (its first value when the sums were last computed from scratch), so that they do not cancel
+  * catastrophically for values far from 0. To bound the accumulation of rounding errors, and to keep the reference
+  * point close to the data, the sums are recomputed from scratch after refresh incremental updates.
+  *
+  * @param npairs the number of pairs
+  * @param windowSize size of the sliding window
+  */
+class SlidingPearson(npairs: Int, windowSize: Int) extends SlidingAction {
+  val refresh = 100
+
+  // State of each pair (start = -1: no state yet): reference point of x and y, Σx, Σy, Σxy, Σx², Σy² (shifted)
+  private val starts = Array.fill(npairs)(-1)
+  private val updates = new Array[Int](npairs)
+  private val stats = new Array[Double](7 * npairs)
+
+  // Whether the state of a pair must be recomputed from scratch for the window starting at start
+  private def stale(pair: Int, start: Int): Boolean = {
+    val last = starts(pair)
+    last < 0 || start < last || start - last >= windowSize || updates(pair) >= refresh
+  }
+
+  def cost(pair: Int, start: Int): Double = {
+    if(starts(pair) == start) 1.0
+    else if(stale(pair, start)) windowSize
+    else 2.0 * (start - starts(pair)) // the rows that leave and enter the window
+  }
+
+  def compute(pair: Int, x: Int, y: Int, start: Int, rows: Array[Array[Double]], capacity: Int): Double = {
+    val last = starts(pair)
+    val o = 7 * pair
+    if(last != start) {
+      var sx, sy, sxy, sxx, syy = 0.0
+      var from = start // the first row to add
+      if(stale(pair, start)) {
+        updates(pair) = 0
+        stats(o) = rows(start % capacity)(x)
+        stats(o + 1) = rows(start % capacity)(y)
+      } else {
+        sx = stats(o + 2)
+        sy = stats(o + 3)
+        sxy = stats(o + 4)
+        sxx = stats(o + 5)
+        syy = stats(o + 6)
+        // Remove the rows that left the window
+        var i = last
+        while(i < start) {
+          val row = rows(i % capacity)
+          val dx = row(x) - stats(o)
+          val dy = row(y) - stats(o + 1)
+          sx -= dx
+          sy -= dy
+          sxy -= dx * dy
+          sxx -= dx * dx
+          syy -= dy * dy
+          i += 1
+        }
+        from = last + windowSize
+        updates(pair) += 1
+      }
+      // Add the rows that entered the window
+      val kx = stats(o)
+      val ky = stats(o + 1)
+      var i = from
+      while(i < start + windowSize) {
+        val row = rows(i % capacity)
+        val dx = row(x) - kx
+        val dy = row(y) - ky
+        sx += dx
+        sy += dy
+        sxy += dx * dy
+        sxx += dx * dx
+        syy += dy * dy
+        i += 1
+      }
+      stats(o + 2) = sx
+      stats(o + 3) = sy
+      stats(o + 4) = sxy
+      stats(o + 5) = sxx
+      stats(o + 6) = syy
+      starts(pair) = start
+    }
+    val n = windowSize.toDouble
+    val sx = stats(o + 2)
+    val sy = stats(o + 3)
+    val cxy = stats(o + 4) - sx * sy / n
+    val vx = (stats(o + 5) - sx * sx / n).max(0.0)
+    val vy = (stats(o + 6) - sy * sy / n).max(0.0)
+    cxy / math.sqrt(vx * vy)
+  }
+}
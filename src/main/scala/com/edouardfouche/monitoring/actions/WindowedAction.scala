@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.monitoring.actions
+
+/**
+  * An action that can be maintained incrementally over a sliding window, i.e., by adding the rows that enter the
+  * window and removing the rows that leave it, instead of computing it from scratch for every window.
+  */
+trait WindowedAction extends Action {
+  /**
+    * Create the incremental state of this action for the pairs of a stream
+    * @param npairs the number of pairs (each pair has its own state, created when it is first computed)
+    * @param windowSize size of the sliding window
+    * @return a new, empty state
+    */
+  def sliding(npairs: Int, windowSize: Int): SlidingAction
+}
+
+/**
+  * Incremental state of an action over a sliding window, for each pair of columns of a stream
+  */
+trait SlidingAction {
+  /**
+    * Compute the action on a pair of columns, over the window of rows [start, start + windowSize)
+    * The state of the pair is brought up to date from the last window it was computed on, if that one is recent
+    * enough (and not after the current one), and recomputed from scratch otherwise.
+    * @param pair the index of the pair
+    * @param x the index of the first column
+    * @param y the index of the second column
+    * @param start the index of the first row in the window
+    * @param rows the rows of the stream, in a ring buffer: the row of index i is rows(i % capacity). The rows must be
+    *             available from start - windowSize to start + windowSize - 1.
+    * @param capacity the capacity of the ring buffer (rows.length, or more if the buffer holds the whole stream)
+    * @return the result of the action on the pair of columns, in the window
+    */
+  def compute(pair: Int, x: Int, y: Int, start: Int, rows: Array[Array[Double]], capacity: Int): Double
+
+  /**
+    * Estimate the cost of computing the action on a pair, over the window of rows [start, start + windowSize)
+    * @param pair the index of the pair
+    * @param start the index of the first row in the window
+    * @return the estimated cost, in number of rows to visit
+    */
+  def cost(pair: Int, start: Int): Double
+}
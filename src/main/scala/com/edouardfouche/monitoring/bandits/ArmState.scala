@@ -0,0 +1,32 @@
+package com.edouardfouche.monitoring.bandits
+
+/**
+  * State of the arms of a bandit, stored as one flat array per statistic (struct-of-arrays) and mutated in place,
+  * so that a round does not allocate anything per arm.
+  *
+  * @param narms the number of arms
+  */
+class ArmState(val narms: Int) {
+  val sums: Array[Double] = new Array[Double](narms) // sum of the gains of each arm
+  val counts: Array[Double] = new Array[Double](narms) // number of pulls of each arm
+  val alpha: Array[Double] = new Array[Double](narms) // first parameter of the Beta posterior of each arm (Thompson Sampling)
+  val beta: Array[Double] = new Array[Double](narms) // second parameter of the Beta posterior of each arm (Thompson Sampling)
+  val values: Array[Double] = new Array[Double](narms) // last observed value of each arm, i.e., the current matrix
+
+  val scores: Array[Double] = new Array[Double](narms) // scratch space for the index (UCB, draw, ...) of each arm
+  val pulled: Array[Boolean] = new Array[Boolean](narms) // scratch space to mark the arms pulled in a round
+
+  /**
+    * Set every arm back to its initial state
+    * @param initializationvalue the initial value of the sums and counts (1.0 for optimistic initialization)
+    */
+  def fill(initializationvalue: Double): Unit = {
+    java.util.Arrays.fill(sums, initializationvalue)
+    java.util.Arrays.fill(counts, initializationvalue)
+    java.util.Arrays.fill(alpha, 1.0)
+    java.util.Arrays.fill(beta, 1.0)
+    java.util.Arrays.fill(values, 0.0)
+    java.util.Arrays.fill(scores, 0.0)
+    java.util.Arrays.fill(pulled, false)
+  }
+}
@@ -20,6 +20,7 @@ import breeze.linalg
 import com.edouardfouche.monitoring.rewards.Reward
 import com.edouardfouche.monitoring.scalingstrategies.ScalingStrategy
 import com.edouardfouche.streamsimulator.Simulator
+import com.edouardfouche.utils.TopK
 import com.typesafe.scalalogging.LazyLogging
 
 /**
@@ -39,39 +40,57 @@ trait Bandit extends LazyLogging {
 
   require(k <= narms) // One cannot pull more arms than available
 
+  val topk = new TopK(narms) // Selection of the top-k arms, without sorting all of them
+
   var initializationvalue = 1.0 // This is the value used for optimistic initilization // Set it to 0 for non-optimistic initialization
 
   /**
-    * In our study, every bandit holds a dependency matrix. Here, we initialize it.
-    * @return A matrix (in fact, squeezed to a 1-D vector) of zeros.
+    * The statistics of the arms, as flat arrays updated in place.
+    * In our study, every bandit also holds a dependency matrix (in fact, squeezed to a 1-D vector), which is
+    * a view on the last observed values of the arms.
     */
-  def init: linalg.Vector[Double] = linalg.Vector(combinations.map(x => 0.0))
-  var currentMatrix: linalg.Vector[Double] = init
+  val state: ArmState = new ArmState(narms)
+  state.fill(initializationvalue) // Initialization the weights to maximal gain forces to exploration at the early phase
+  val currentMatrix: linalg.DenseVector[Double] = linalg.DenseVector(state.values)
   val initial_k: Int = k
-  var sums: Array[Double] = (0 until narms).map(_ => initializationvalue).toArray // Initialization the weights to maximal gain forces to exploration at the early phase
-  var counts: Array[Double] = sums.map(_ => initializationvalue)
+  val sums: Array[Double] = state.sums
+  val counts: Array[Double] = state.counts
   var t: Double = initializationvalue
 
   /**
     * Reset the bandit and the stream to their original state, just like at the object's creation.
     */
   def reset: Unit = {
-    currentMatrix = init
+    state.fill(initializationvalue)
     k = initial_k
-    sums = (0 until narms).map(_ => initializationvalue).toArray
-    counts = sums.map(_ => initializationvalue)
     t = initializationvalue
     stream.reset()
   }
 
   def disable_optimistic: Unit = { // Reset AND set the initializationvalue to 0.0 (not optimistic anymore)
     initializationvalue = 0.0
-    currentMatrix = init
-    k = initial_k
-    sums = (0 until narms).map(_ => initializationvalue).toArray
-    counts = sums.map(_ => initializationvalue)
-    t = initializationvalue
-    stream.reset()
+    reset
+  }
+
+  /**
+    * Derive the gains of the pulled arms from their new values and update the state of these arms in place
+    * @param indexes the indexes of the pulled arms
+    * @param newValues the new value of each pulled arm
+    * @return the gain of each pulled arm
+    */
+  def observe(indexes: Array[Int], newValues: Array[Double]): Array[Double] = {
+    val gains = new Array[Double](indexes.length)
+    var i = 0
+    while(i < indexes.length) {
+      val arm = indexes(i)
+      val d = reward.getReward(newValues(i), state.values(arm))
+      state.values(arm) = newValues(i) // replace
+      counts(arm) += 1.0
+      sums(arm) += d
+      gains(i) = d
+      i += 1
+    }
+    gains
   }
 
   /**
@@ -1,6 +1,7 @@
 package com.edouardfouche.monitoring.bandits
 
 import com.edouardfouche.monitoring.resetstrategies.SharedAdwin
+import com.edouardfouche.utils.IndexedMinHeap
 
 /**
   * General trait for bandits that use adwin
@@ -10,11 +11,48 @@ trait BanditAdwin extends Bandit {
 
   // Initialize a shared bandit instance and the history of updates
   var sharedAdwin = new SharedAdwin(stream.npairs, delta)
-  var history: List[scala.collection.mutable.Map[Int,Double]] = List() // first el in the update for count, and last in the update for weight
+  val history: PullHistory = new PullHistory // the arms pulled at each round and their rewards, the oldest first
+
+  // The window of each arm is the size of its adwin (its number of pulls) plus its number of unpulls, i.e.,
+  // history.length + (the size of its adwin - its number of pulls in the history). The latter is the key of the arm.
+  // As it only changes when the arm is pulled or rolled back, the keys are updated for those arms only.
+  val windows: IndexedMinHeap = new IndexedMinHeap(narms, x => sharedAdwin.getSingleSize(x) - counts(x))
 
   override def reset: Unit = {
     super.reset
     sharedAdwin = new SharedAdwin(stream.npairs, delta)
-    history = List()
+    history.clear()
+    windows.reset(x => sharedAdwin.getSingleSize(x) - counts(x))
+  }
+
+  private def rekey(x: Int): Unit = windows(x) = sharedAdwin.getSingleSize(x) - counts(x)
+
+  /**
+    * Here we, add up the size of the adwin (those are the number of pulls) and the number of unpulls, to get the
+    * actual size of window each arm. We look for the smallest window.
+    * @return the size of the smallest window
+    */
+  def smallestWindow: Int = {
+    history.newest(rekey) // the arms pulled in the last round
+    (windows.minKey + history.length).toInt
+  }
+
+  /**
+    * Roll back the oldest rounds of the history, until it is not larger than the smallest window
+    */
+  def rollback(): Unit = {
+    val smallest_window = smallestWindow
+    if(smallest_window < history.length) history.rollback(history.length - smallest_window)(forget)
+  }
+
+  /**
+    * Forget an update of the history, i.e., remove it from the statistics of the arm
+    * @param arm the index of the arm
+    * @param value the reward
+    */
+  def forget(arm: Int, value: Double): Unit = {
+    sums(arm) = sums(arm) - value
+    counts(arm) = counts(arm) - 1
+    rekey(arm)
   }
 }
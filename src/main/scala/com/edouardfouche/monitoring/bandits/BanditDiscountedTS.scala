@@ -0,0 +1,52 @@
+package com.edouardfouche.monitoring.bandits
+
+/**
+  * General trait for bandits based on Discounted Thompson Sampling, as in "Taming Non-stationary Bandits: A Bayesian
+  * Approach" (Raj2017): at each round, the Beta parameters of every arm are multiplied by gamma.
+  * The parameters are discounted lazily (see DiscountedValues), and cannot be lower than 0.001 because they need to be
+  * positive. In some unfortunate circumstances, it might happen that rounding leads to a parameter equal to 0.
+  */
+trait BanditDiscountedTS extends BanditTS {
+  def gamma: Double // the discounting factor
+
+  // Parameters of the Beta posterior of each arm, discounted at each round
+  val alphas: DiscountedValues = new DiscountedValues(narms, gamma, 0.001)
+  val betas: DiscountedValues = new DiscountedValues(narms, gamma, 0.001)
+  alphas.fill(1.0)
+  betas.fill(1.0)
+
+  override def reset: Unit = {
+    super.reset
+    alphas.fill(1.0)
+    betas.fill(1.0)
+  }
+
+  // The losses of the pulled arms, i.e., 1 - gain (scratch space for the update of the betas)
+  private var losses = new Array[Double](16)
+
+  override def drawAll(): Array[Double] = {
+    val draws = state.scores
+    var x = 0
+    while(x < narms) {
+      draws(x) = sampler.draw(alphas(x), betas(x))
+      x += 1
+    }
+    draws
+  }
+
+  /**
+    * Discount the parameters of every arm, and add the gains of the pulled arms
+    * @param indexes the indexes of the pulled arms
+    * @param gains the gain of each pulled arm
+    */
+  def discount(indexes: Array[Int], gains: Array[Double]): Unit = {
+    if(losses.length < gains.length) losses = new Array[Double](gains.length)
+    var i = 0
+    while(i < gains.length) {
+      losses(i) = 1.0 - gains(i)
+      i += 1
+    }
+    alphas.discount(indexes, gains)
+    betas.discount(indexes, losses)
+  }
+}
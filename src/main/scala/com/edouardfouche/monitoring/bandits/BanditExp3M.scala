@@ -0,0 +1,199 @@
+package com.edouardfouche.monitoring.bandits
+
+/**
+  * General trait for bandits based on Exp3.M, as described in "Algorithms for Adversarial Bandit Problems with Multiple
+  * Plays" (Uchiya, 2010)
+  *
+  * The weights can grow very large, so they are stored as their logarithms on primitive doubles, which can neither
+  * overflow nor underflow. Every sum of weights is computed as a log-sum-exp, i.e., relative to its largest term, and
+  * the capping threshold is derived from the sums of the smaller weights (the suffix sums over the sorted weights),
+  * so that no weight is lost to an underflow, however small it is compared to the largest one.
+  */
+trait BanditExp3M extends Bandit {
+  def gamma: Double // the exploration parameter
+
+  val logweights: Array[Double] = new Array[Double](narms) // logarithm of the weight of each arm
+  private val sorting: Array[Boolean] = new Array[Boolean](narms) // the arms sorted by the capping search (scratch)
+
+  val probabilities: Array[Double] = new Array[Double](narms) // probability of each arm to be pulled (times k)
+  val capped: Array[Boolean] = new Array[Boolean](narms) // the arms whose weight is capped (S0), which are not updated
+  private val rounding: Array[Double] = new Array[Double](narms) // scratch space for DepRound
+  val random = new java.util.SplittableRandom() // Each bandit has its own generator, as the bandits may run in parallel
+
+  override def reset: Unit = {
+    super.reset
+    java.util.Arrays.fill(logweights, 0.0) // initialize weights to 1
+  }
+
+  /**
+    * Steps 1 to 3: cap the largest weights, and derive the probability of each arm
+    * The arms whose weight is capped are marked in capped, the probabilities are written in probabilities.
+    * @param k the number of pulls
+    */
+  def computeProbabilities(k: Int): Unit = {
+    val teta = (1.0/k - gamma/narms)/(1.0-gamma)
+
+    var largest = Double.NegativeInfinity // the largest log-weight
+    var x = 0
+    while(x < narms) {
+      if(logweights(x) > largest) largest = logweights(x)
+      capped(x) = false
+      x += 1
+    }
+    val logsum = logSumExcept(null)
+
+    var alpha = Double.PositiveInfinity // the logarithm of the capping threshold
+    if(largest >= math.log(teta) + logsum) {
+      // The larger weights first. Fewer than k weights are capped (in theory), so we only sort the k+1 largest ones,
+      // and all of them only if needed.
+      var sorted = topk.largest(logweights, (k+1).min(narms))
+      var remaining = suffixSums(sorted) // remaining(i): logarithm of the sum of the weights but the i largest ones
+      capped(sorted(0)) = true
+      var i = 1
+      var searching = true
+      while(searching) {
+        if(i == sorted.length && sorted.length < narms) {
+          sorted = topk.largest(logweights, narms)
+          remaining = suffixSums(sorted)
+        }
+        alpha = if(1-i*teta <= 0) Double.NegativeInfinity else remaining(i) + math.log(teta/(1-i*teta))
+        if(i < sorted.length && alpha < logweights(sorted(i))) {
+          capped(sorted(i)) = true
+          i += 1
+        } else searching = false
+      }
+    }
+
+    // The capped weights, relative to the largest one
+    val reference = largest.min(alpha)
+    var cappedsum = 0.0
+    x = 0
+    while(x < narms) {
+      val w = if(reference == Double.NegativeInfinity) 0.0 else math.exp(logweights(x).min(alpha) - reference)
+      probabilities(x) = w
+      cappedsum += w
+      x += 1
+    }
+    x = 0
+    while(x < narms) {
+      val w = probabilities(x)
+      val p = if(w == 0.0 || cappedsum == 0.0) 0.0 else (1-gamma)*(w/cappedsum)
+      probabilities(x) = k*(p + gamma/narms)
+      x += 1
+    }
+  }
+
+  /**
+    * @param excluded the arms to leave out of the sum (marked in sorting), or null for none
+    * @return the logarithm of the sum of the weights of the other arms (NegativeInfinity if there are none)
+    */
+  private def logSumExcept(excluded: Array[Boolean]): Double = {
+    var largest = Double.NegativeInfinity
+    var x = 0
+    while(x < narms) {
+      if((excluded == null || !excluded(x)) && logweights(x) > largest) largest = logweights(x)
+      x += 1
+    }
+    if(largest == Double.NegativeInfinity) return largest
+    var sum = 0.0
+    x = 0
+    while(x < narms) {
+      if(excluded == null || !excluded(x)) sum += math.exp(logweights(x) - largest)
+      x += 1
+    }
+    largest + math.log(sum)
+  }
+
+  /**
+    * @param sorted the indexes of the largest weights, in decreasing order
+    * @return the logarithm of the sum of the weights, but the i first of sorted, for each i up to sorted.length
+    */
+  private def suffixSums(sorted: Array[Int]): Array[Double] = {
+    sorted.foreach(sorting(_) = true)
+    val suffixes = new Array[Double](sorted.length + 1)
+    suffixes(sorted.length) = logSumExcept(sorting) // the arms which were not sorted
+    sorted.foreach(sorting(_) = false)
+    var i = sorted.length - 1
+    while(i >= 0) { // from the smallest weight to the largest one, so that no sum is a difference
+      val a = logweights(sorted(i))
+      val b = suffixes(i+1)
+      suffixes(i) = if(b == Double.NegativeInfinity) a else a.max(b) + math.log1p(math.exp(-(a-b).abs))
+      i -= 1
+    }
+    suffixes
+  }
+
+  /**
+    * Step 4: draw k arms according to the probabilities, with dependent rounding (DepRound)
+    * The fractional probabilities are paired in a single sweep: each pairing makes one of the two integral (0 or 1)
+    * while preserving the marginals, and the other one is paired with the next fractional probability.
+    * @param k the number of pulls
+    * @return the indexes of the drawn arms
+    */
+  def depRound(k: Int): Array[Int] = {
+    if(k == narms) return probabilities.indices.toArray // Here, DepRound does not make much sense
+    System.arraycopy(probabilities, 0, rounding, 0, narms)
+    var pending = -1 // the last fractional probability not yet rounded
+    var x = 0
+    while(x < narms) {
+      if(fractional(rounding(x))) {
+        if(pending < 0) pending = x
+        else {
+          val pi = rounding(pending)
+          val pj = rounding(x)
+          val alpha = (1-pi).min(pj)
+          val beta = pi.min(1-pj)
+          if(random.nextDouble() < beta/(alpha+beta)) {
+            rounding(pending) = pi + alpha
+            rounding(x) = pj - alpha
+          } else {
+            rounding(pending) = pi - beta
+            rounding(x) = pj + beta
+          }
+          if(!fractional(rounding(pending))) pending = if(fractional(rounding(x))) x else -1
+        }
+      }
+      x += 1
+    }
+    // A single fractional probability may remain, due to rounding errors
+    if(pending >= 0) rounding(pending) = if(random.nextDouble() < rounding(pending)) 1.0 else 0.0
+
+    var npulled = 0
+    x = 0
+    while(x < narms) {
+      if(rounding(x) > 0.5) npulled += 1
+      x += 1
+    }
+    val indexes = new Array[Int](npulled)
+    var i = 0
+    x = 0
+    while(x < narms) {
+      if(rounding(x) > 0.5) {
+        indexes(i) = x
+        i += 1
+      }
+      x += 1
+    }
+    indexes
+  }
+
+  @inline private def fractional(p: Double): Boolean = p > 0.00001 & p < 0.99999
+
+  /**
+    * Step 5: update the weights of the pulled arms (except the capped ones) with their estimated reward
+    * @param indexes the indexes of the pulled arms
+    * @param gains the gain of each pulled arm
+    * @param k the number of pulls
+    */
+  def updateWeights(indexes: Array[Int], gains: Array[Double], k: Int): Unit = {
+    var i = 0
+    while(i < indexes.length) {
+      val arm = indexes(i)
+      if(!capped(arm)) {
+        val reward = gains(i) / probabilities(arm)
+        logweights(arm) += k*gamma*reward/narms // i.e., the weight is multiplied by exp(k*gamma*reward/narms)
+      }
+      i += 1
+    }
+  }
+}
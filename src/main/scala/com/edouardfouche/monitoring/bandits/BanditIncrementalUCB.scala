@@ -0,0 +1,42 @@
+package com.edouardfouche.monitoring.bandits
+
+import com.edouardfouche.utils.UCBIndex
+
+/**
+  * General trait for bandits based on UCB whose indexes only depend on the sums and counts of the arms, so that the
+  * arms can also be selected incrementally with an UCBIndex (see enable_incremental), e.g., CUCB or MP-SWUCB.
+  */
+trait BanditIncrementalUCB extends BanditUCB {
+  var incremental: Boolean = false // Whether to select the arms with an UCBIndex, instead of computing every index
+
+  def enable_incremental: Unit = { // Select the arms incrementally from now on (the arms selected are the same)
+    incremental = true
+    ucbindex.rebuild()
+  }
+
+  // The arms grouped by count, kept up to date with the pulled arms when incremental is enabled
+  lazy val ucbindex: UCBIndex = new UCBIndex(sums, counts, logfactor)
+
+  override def reset: Unit = {
+    super.reset
+    if(incremental) ucbindex.rebuild()
+  }
+
+  override def observe(indexes: Array[Int], newValues: Array[Double]): Array[Double] = {
+    val gains = super.observe(indexes, newValues)
+    if(incremental) ucbindex.update(indexes)
+    gains
+  }
+
+  /**
+    * Get the k arms with the largest upper confidence bound
+    * @param t the current time step
+    * @param horizon the time step used in the exploration term (t, or for example the window size when smaller)
+    * @param k the number of arms
+    * @return the indexes of these arms, in decreasing order of upper confidence bound
+    */
+  def largestUCB(t: Double, horizon: Double, k: Int): Array[Int] = {
+    if(incremental) ucbindex.largest(t, horizon, k)
+    else topk.largest(upperConfidences(t, horizon), k)
+  }
+}
@@ -1,38 +1,52 @@
 package com.edouardfouche.monitoring.bandits
 
+import com.edouardfouche.utils.{KLUCB, KLUCBIndex}
+
 /**
   * General trait for bandits based on KL-UCB
   */
 trait BanditKLUCB extends Bandit {
-  val Ndelta: Double = scala.math.pow(10,-8)
-  val eps: Double = scala.math.pow(10,-12)
-  val maxiter = 20
+  val Ndelta: Double = KLUCB.Ndelta
+  val eps: Double = KLUCB.eps
+  val maxiter: Int = KLUCB.maxiter
 
   // Note to future self: this was a big mistake, as operator ^ in scala does not mean at all "power
   //val delta = 1*10^(-8) // -> give -14
   //val eps = 1*10^(-12)
   // calculate the kl-divergence
-  def kl(p: Double, q: Double): Double = {
-    p * scala.math.log(p/q) + (1-p)*scala.math.log((1-p)/(1-q))
-  }
+  def kl(p: Double, q: Double): Double = KLUCB.kl(p, q)
   // calculate the derivative kl-divergence
-  def dkl(p: Double , q: Double): Double = {
-    (q-p) / (q * (1.0 - q))
+  def dkl(p: Double , q: Double): Double = KLUCB.dkl(p, q)
+
+  // Exploration term, as a function of t and of the number of pulls of an arm
+  val exploration: (Double, Double) => Double = KLUCB.exploration // alternative: KL-UCB+ KLUCB.explorationPlus
+
+  var fast: Boolean = false // Whether to use the fast, approximate inversion of the KL-divergence (see KLUCB.upperFast)
+
+  def enable_fast: Unit = { // Use the fast inversion from now on (the indexes are within KLUCB.fasterror from the exact ones)
+    fast = true
   }
+
+  // Cache of the indexes, recomputed only for the arms which could make it to the top-k
+  private var index: KLUCBIndex = _
+  def klucbindex: KLUCBIndex = {
+    if(index == null || index.fast != fast) index = new KLUCBIndex(narms, exploration, fast)
+    index
+  }
+
   // use Newton's method
   def getKLUCBupper(arm: Int, t: Double): Double = {
-    val logndn = scala.math.log(t) / counts(arm) // alternative: KL-UCB+ scala.math.log(t/ counts(arm)) / counts(arm)
+    val logndn = exploration(t, counts(arm))
     val p: Double = (sums(arm)/counts(arm)).max(Ndelta)
-    if(p >= 1.0) return 1.0
-
-    var q = p + Ndelta
-    for(i <- 1 to maxiter) {
-      val f = logndn - kl(p,q)
-      val df = -dkl(p,q)
-      if(f*f < eps) return q // newton's method has converged
-      q = (1.0-Ndelta).min((q - f/df).max(p+Ndelta))
-    }
-    q
+    if(fast) KLUCB.upperFast(p, logndn) else KLUCB.upper(p, logndn)
   }
 
+  /**
+    * Get the k arms with the largest KL-UCB index (the arms never pulled have index 1.0)
+    * @param t the current time step
+    * @param k the number of arms
+    * @return the indexes of these arms, in decreasing order of KL-UCB index
+    */
+  def largestKLUCB(t: Double, k: Int): Array[Int] = klucbindex.largest(sums, counts, t, k)
+
 }
@@ -1,13 +1,24 @@
 package com.edouardfouche.monitoring.bandits
 
+import com.edouardfouche.utils.BetaSampler
+
 /**
   * General trait for bandits based on Thompson Sampling
   */
 trait BanditTS extends Bandit {
-  var beta_params: Array[(Double, Double)] = (0 until narms).map(x => (1.0,1.0)).toArray // initialize beta parameters to 1
+  // Parameters of the Beta posterior of each arm, initialized to 1 (see Bandit.reset)
+  val alpha: Array[Double] = state.alpha
+  val beta: Array[Double] = state.beta
+
+  val sampler: BetaSampler = new BetaSampler() // Each bandit has its own sampler, as the bandits may run in parallel
 
-  override def reset: Unit = {
-    super.reset
-    beta_params = (0 until narms).map(x => (1.0,1.0)).toArray
+  /**
+    * Draw a sample from the Beta posterior of every arm
+    * @return the draws, in the scratch space of the arm state (overwritten by the next call)
+    */
+  def drawAll(): Array[Double] = {
+    val draws = state.scores
+    sampler.fill(alpha, beta, draws)
+    draws
   }
 }
@@ -5,4 +5,40 @@ package com.edouardfouche.monitoring.bandits
   */
 trait BanditUCB extends Bandit {
   val logfactor: Double = 3.0/2.0 // Note that logfactor = 1.0/2.0 would correspond to CUCB-m
+
+  /**
+    * Compute the upper confidence bound of every arm
+    * @param t the current time step
+    * @param horizon the time step used in the exploration term (t, or for example the window size when smaller)
+    * @return the upper confidences, in the scratch space of the arm state (overwritten by the next call)
+    */
+  def upperConfidences(t: Double, horizon: Double): Array[Double] =
+    upperConfidences(t, horizon, sums(_), counts(_), Double.NaN)
+
+  /**
+    * Compute the upper confidence bound of every arm from given statistics (e.g., discounted sums and counts)
+    * @param t the current time step
+    * @param horizon the time step used in the exploration term (t, or for example the window size when smaller)
+    * @param sum the sum of the gains of an arm
+    * @param count the number of pulls of an arm
+    * @param unpulled the upper confidence of the arms whose count is 0 (NaN puts them last)
+    * @return the upper confidences, in the scratch space of the arm state (overwritten by the next call)
+    */
+  def upperConfidences(t: Double, horizon: Double, sum: Int => Double, count: Int => Double,
+                       unpulled: Double): Array[Double] = {
+    val upperconfidences = state.scores
+    val logt = math.log(horizon)
+    var x = 0
+    while(x < narms) {
+      val n = count(x)
+      if(n == 0.0) upperconfidences(x) = unpulled
+      else {
+        val confidence = if(t == 0.0) 0.0 else math.sqrt((logfactor*logt)/n)
+        upperconfidences(x) = (sum(x)/n) + confidence//.min(1.0))
+      }
+      x += 1
+    }
+    upperconfidences
+  }
+
 }
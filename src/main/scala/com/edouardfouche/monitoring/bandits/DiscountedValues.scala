@@ -0,0 +1,70 @@
+package com.edouardfouche.monitoring.bandits
+
+/**
+  * Statistics of the arms of a discounted bandit: at each round, every value is multiplied by the discount factor
+  * gamma, and the pulled arms receive an increment, i.e., x(t+1) = max(x(t) * gamma + increment, floor).
+  *
+  * The values are stored relative to a common scale, so that discounting every arm is a single multiplication of the
+  * scale, and a round costs O(k) for k pulled arms instead of O(narms). The stored values are only renormalised, in
+  * O(narms), when the scale falls below minscale (i.e., every log(minscale)/log(gamma) rounds).
+  * As max(x * gamma, floor) repeated n times is max(x * gamma^n, floor), the floor is applied when a value is read.
+  *
+  * @param narms the number of arms
+  * @param gamma the discount factor, in [0, 1]
+  * @param floor the smallest value (e.g., the parameters of a Beta distribution must stay positive)
+  */
+class DiscountedValues(val narms: Int, val gamma: Double, val floor: Double) {
+  require((0 <= gamma) & (gamma <= 1.0))
+
+  private val stored = new Array[Double](narms) // the value of each arm, divided by the scale
+  private var scale = 1.0
+  private var updated = new Array[Double](16) // scratch space for the new values of the pulled arms
+
+  /**
+    * @return the current value of an arm
+    */
+  @inline def apply(x: Int): Double = (stored(x) * scale).max(floor)
+
+  /**
+    * Set every value back to its initial state
+    */
+  def fill(value: Double): Unit = {
+    java.util.Arrays.fill(stored, value)
+    scale = 1.0
+  }
+
+  /**
+    * Discount every value, then add an increment to the values of the pulled arms
+    * @param indexes the indexes of the pulled arms
+    * @param increments the increment of each pulled arm
+    */
+  def discount(indexes: Array[Int], increments: Array[Double]): Unit = {
+    if(updated.length < indexes.length) updated = new Array[Double](indexes.length)
+    var i = 0
+    while(i < indexes.length) {
+      updated(i) = (apply(indexes(i)) * gamma + increments(i)).max(floor)
+      i += 1
+    }
+    scale = scale * gamma
+    if(scale < DiscountedValues.minscale) renormalise()
+    i = 0
+    while(i < indexes.length) {
+      stored(indexes(i)) = updated(i) / scale
+      i += 1
+    }
+  }
+
+  // Apply the scale to the stored values (a value which underflows reads as the floor, as in the eager update)
+  private def renormalise(): Unit = {
+    var x = 0
+    while(x < narms) {
+      stored(x) = stored(x) * scale
+      x += 1
+    }
+    scale = 1.0
+  }
+}
+
+object DiscountedValues {
+  val minscale: Double = 1e-150 // The stored values (at most 1/minscale times the current ones) cannot overflow
+}
@@ -0,0 +1,115 @@
+package com.edouardfouche.monitoring.bandits
+
+/**
+  * History of the updates of a bandit, i.e., the arms pulled at each round and their rewards, from the oldest round to
+  * the newest one, e.g., to forget the oldest rounds when ADWIN shrinks its window (see BanditAdwin) or with a sliding
+  * window (see MPSWUCB).
+  *
+  * The updates are stored in primitive ring buffers (one for the arms, one for the rewards, one for the number of
+  * updates of each round), which grow by doubling when full. Adding a round of k updates is amortised O(k), and rolling
+  * back (forgetting) the oldest rounds is O(1) per update forgotten, without allocation.
+  */
+class PullHistory {
+  private var arms = new Array[Int](64)
+  private var rewards = new Array[Double](64)
+  private var start = 0 // position of the oldest update
+  private var nupdates = 0
+
+  private var sizes = new Array[Int](64) // number of updates of each round
+  private var first = 0 // position of the oldest round
+  private var nrounds = 0
+
+  /**
+    * @return the number of rounds in the history
+    */
+  def length: Int = nrounds
+
+  /**
+    * Add a round to the history
+    * @param indexes the indexes of the arms pulled in this round
+    * @param gains the reward of each pulled arm
+    */
+  def add(indexes: Array[Int], gains: Array[Double]): Unit = {
+    require(indexes.length == gains.length, "There must be one reward per arm")
+    while(nupdates + indexes.length > arms.length) growUpdates()
+    if(nrounds == sizes.length) growRounds()
+
+    var i = 0
+    var position = (start + nupdates) & (arms.length - 1)
+    while(i < indexes.length) {
+      arms(position) = indexes(i)
+      rewards(position) = gains(i)
+      position = (position + 1) & (arms.length - 1)
+      i += 1
+    }
+    nupdates += indexes.length
+    sizes((first + nrounds) & (sizes.length - 1)) = indexes.length
+    nrounds += 1
+  }
+
+  /**
+    * Forget the oldest rounds
+    * @param n the number of rounds to forget
+    * @param forget called with the arm and the reward of each update forgotten, from the oldest one
+    */
+  def rollback(n: Int)(forget: (Int, Double) => Unit): Unit = {
+    require(n >= 0 && n <= nrounds, s"Cannot roll back $n rounds out of $nrounds")
+    var r = 0
+    while(r < n) {
+      var i = sizes(first)
+      while(i > 0) {
+        forget(arms(start), rewards(start))
+        start = (start + 1) & (arms.length - 1)
+        nupdates -= 1
+        i -= 1
+      }
+      first = (first + 1) & (sizes.length - 1)
+      nrounds -= 1
+      r += 1
+    }
+  }
+
+  /**
+    * Visit the arms of the newest round
+    * @param visit called with the index of each arm pulled in the newest round
+    */
+  def newest(visit: Int => Unit): Unit = {
+    if(nrounds > 0) {
+      val size = sizes((first + nrounds - 1) & (sizes.length - 1))
+      var position = (start + nupdates - size) & (arms.length - 1)
+      var i = 0
+      while(i < size) {
+        visit(arms(position))
+        position = (position + 1) & (arms.length - 1)
+        i += 1
+      }
+    }
+  }
+
+  def clear(): Unit = {
+    start = 0
+    nupdates = 0
+    first = 0
+    nrounds = 0
+  }
+
+  // Double the capacity, moving the oldest updates to the start of the buffers
+  private def growUpdates(): Unit = {
+    arms = unwrap(arms, start, nupdates, arms.length * 2)
+    rewards = unwrap(rewards, start, nupdates, rewards.length * 2)
+    start = 0
+  }
+
+  private def growRounds(): Unit = {
+    sizes = unwrap(sizes, first, nrounds, sizes.length * 2)
+    first = 0
+  }
+
+  private def unwrap[T](buffer: Array[T], from: Int, n: Int, capacity: Int): Array[T] = {
+    val grown = java.lang.reflect.Array.newInstance(buffer.getClass.getComponentType, capacity).asInstanceOf[Array[T]]
+    val tail = n.min(buffer.length - from)
+    System.arraycopy(buffer, from, grown, 0, tail)
+    System.arraycopy(buffer, 0, grown, tail, n - tail)
+    grown
+  }
+}
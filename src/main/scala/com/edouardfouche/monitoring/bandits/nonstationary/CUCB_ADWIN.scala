@@ -19,55 +19,25 @@ case class CUCB_ADWIN(delta: Double)(val stream: Simulator, val reward: Reward,
   val name = s"CUCB-ADWIN-$delta"
 
   def next: (Array[(Int, Int)], Array[Double], Double) = {
-    val confidences = counts.map(x => if(t==0.0 | x == 0.0) 0 else math.sqrt((logfactor*math.log(t))/x))
-    val upperconfidences = sums.zip(counts).zip(confidences).map(x => (x._1._1 / x._1._2) + x._2)//.min(1.0))
-    val indexes = upperconfidences.zipWithIndex.sortBy(-_._1).map(_._2).take(k)
+    val upperconfidences = upperConfidences(t, t)
+    val indexes = topk.largest(upperconfidences, k)
     val arms = indexes.map(combinations(_))
 
     val newValues = stream.nextAndCompute(indexes)
     if (newValues.isEmpty) return (Array[(Int, Int)](), Array[Double](), 0)
 
-    val updates = scala.collection.mutable.Map[Int, Double]()
-
-    val gains = (indexes zip newValues).map(x => {
-      val d = reward.getReward(x._2, currentMatrix(x._1))
-      currentMatrix(x._1) = x._2 // replace
-      counts(x._1) += 1.0
-      sums(x._1) += d
-
-      // Add into adwin and add the update into the map
-      sharedAdwin.addElement(x._1, d)
-      updates(x._1) = d
-      d
-    })
-    history = history :+ updates
+    val gains = observe(indexes, newValues)
+    sharedAdwin.addElements(indexes, gains) // Add into adwin
+    history.add(indexes, gains)
     t = t + 1
 
     k = scalingstrategy.scale(gains, indexes, sums, counts, t)
 
-    // Here we, add up the size of the adwin (those are the number of pulls) and the number of unpulls, to get the
-    // actual size of each pulled arm.
-    val windows = (0 until narms).map(x => (x, sharedAdwin.getSingleSize(x) + (history.length-counts(x))))
-
-    val smallest_window = windows.minBy(_._2) // this is the smallest window
-
-    // Rolling back
-    if(smallest_window._2.toInt < history.length) {
-      for{
-        x <- smallest_window._2.toInt until history.length
-      } {
-        val rollback = history.head
-        history = history.tail
-        for((key,value) <- rollback) {
-          sums(key) = sums(key) - value
-          counts(key) = counts(key) - 1
-        }
-      }
-    }
+    // Roll back the history to the smallest window
+    rollback()
     t = history.length + 1 // The time context is the same as the history, which is the same as the smallest window
 
     (arms, gains, gains.sum)
   }
 
-
 }
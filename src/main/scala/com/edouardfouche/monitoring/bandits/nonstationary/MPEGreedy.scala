@@ -22,36 +22,67 @@ case class MPEGreedy(epsilon: Double)(val stream: Simulator, val reward: Reward,
 
   val name = s"MP-EG; e=$epsilon"
 
+  // The arms still available in a round: removal by swapping with the last one, undone at the end of the round
+  val remaining: Array[Int] = (0 until narms).toArray
+  val positions: Array[Int] = (0 until narms).toArray
+  var nremaining: Int = narms
+
+  def remove(arm: Int): Unit = {
+    state.pulled(arm) = true
+    val last = remaining(nremaining - 1)
+    remaining(positions(arm)) = last
+    positions(last) = positions(arm)
+    nremaining -= 1
+  }
+
+  def restore(arm: Int): Unit = {
+    state.pulled(arm) = false
+    nremaining += 1
+    val position = positions(arm)
+    val moved = remaining(position)
+    remaining(nremaining - 1) = moved
+    positions(moved) = nremaining - 1
+    remaining(position) = arm
+    positions(arm) = position
+  }
+
   def next: (Array[(Int, Int)], Array[Double], Double) = {
-    var sortedindexes = sums.zip(counts).zipWithIndex.sortBy(x => - x._1._1 / x._1._2).map(_._2)
+    // The greedy choices can only come from the top-k arms, since each of the k choices removes at most one of them
+    val means = state.scores
+    var x = 0
+    while(x < narms) {
+      means(x) = sums(x) / counts(x)
+      x += 1
+    }
+    val topindexes = topk.largest(means, k)
+    var topposition = 0
 
-    // MP-EpsilonGreedyBandit: Take the head of sortedindexes or randomly
-    val indexes = (0 until k).map(x => {
+    // MP-EpsilonGreedyBandit: Take the best remaining arm or randomly
+    val indexes = new Array[Int](k)
+    var i = 0
+    while(i < k) {
       if(math.random <= epsilon) {
-        val arm = sortedindexes.head
-        sortedindexes = sortedindexes.tail
-        arm
+        while(state.pulled(topindexes(topposition))) topposition += 1
+        indexes(i) = topindexes(topposition)
       }
       else {
-        val randomindex = scala.util.Random.nextInt(sortedindexes.length)
-        val arm = sortedindexes(randomindex)
-        sortedindexes  = sortedindexes.take(randomindex) ++ sortedindexes.drop(randomindex+1)
-        arm
+        indexes(i) = remaining(scala.util.Random.nextInt(nremaining))
       }
-    }).toArray
+      remove(indexes(i))
+      i += 1
+    }
+    i = k - 1
+    while(i >= 0) { // undo the removals in the reverse order
+      restore(indexes(i))
+      i -= 1
+    }
 
     val arms = indexes.map(combinations(_))
 
     val newValues = stream.nextAndCompute(indexes)
     if (newValues.isEmpty) return (Array[(Int, Int)](), Array[Double](), 0)
 
-    val gains = (indexes zip newValues).map(x => {
-      val d = reward.getReward(x._2, currentMatrix(x._1))
-      currentMatrix(x._1) = x._2 // replace
-      counts(x._1) += 1.0
-      sums(x._1) += d
-      d
-    })
+    val gains = observe(indexes, newValues)
 
     t += 1
     k = scalingstrategy.scale(gains, indexes, sums, counts, t)
@@ -26,57 +26,25 @@ case class MPKLUCB_ADWIN(delta: Double)(val stream: Simulator, val reward: Rewar
 
   def next: (Array[(Int, Int)], Array[Double], Double) = {
     // Here I thought about replacing t by the sum of all the draws, it turned out that the results were slightly worse (tried on scenario1 and 2 from JK).
-    val klindices:Array[(Int,Double)] = (0 until narms).map(x => if(t==0.0 | counts(x) == 0.0) (x,1.0) else (x,getKLUCBupper(x,t))).toArray
-
-    val indexes = klindices.sortBy(-_._2).map(_._1).take(k)
+    val indexes = largestKLUCB(t, k)
 
     val arms = indexes.map(combinations(_))
 
     val newValues = stream.nextAndCompute(indexes)
     if (newValues.isEmpty) return (Array[(Int, Int)](), Array[Double](), 0)
 
-    val updates = scala.collection.mutable.Map[Int, Double]()
-
-    // Update the current Matrix, compute the gains and update the weights at the same time
-    val gains = (indexes zip newValues).map(x => {
-      val d = reward.getReward(x._2, currentMatrix(x._1))
-      currentMatrix(x._1) = x._2 // replace
-      counts(x._1) += 1.0
-      sums(x._1) += d
-
-      // Add into adwin and add the update into the map
-      sharedAdwin.addElement(x._1, d)
-      updates(x._1) = d
-      d
-    })
-    history = history :+ updates
+    val gains = observe(indexes, newValues)
+    sharedAdwin.addElements(indexes, gains) // Add into adwin
+    history.add(indexes, gains)
     t = t + 1
 
     k = scalingstrategy.scale(gains, indexes, sums, counts, t)
 
-    // Here we, add up the size of the adwin (those are the number of pulls) and the number of unpulls, to get the
-    // actual size of each pulled arm.
-    val windows = (0 until narms).map(x => (x, sharedAdwin.getSingleSize(x) + (history.length-counts(x))))
-
-    val smallest_window = windows.minBy(_._2) // this is the smallest window
-
-    // Rolling back
-    if(smallest_window._2.toInt < history.length) {
-      for{
-        x <- smallest_window._2.toInt until history.length
-      } {
-        val rollback = history.head
-        history = history.tail
-        for((key,value) <- rollback) {
-          sums(key) = sums(key) - value // if(counts(key) == 1.0) 1.0 else weights(key) - (1.0/(counts(key)-1.0))*(value._1 - weights(key))
-          counts(key) = counts(key) - 1 //- value._2
-        }
-      }
-    }
+    // Roll back the history to the smallest window
+    rollback()
     t = history.length + 1 // The time context is the same as the history, which is the same as the smallest window
 
-    val gain = gains.sum
-    (arms, gains, gain)
+    (arms, gains, gains.sum)
   }
 
 }
@@ -1,6 +1,5 @@
 package com.edouardfouche.monitoring.bandits.nonstationary
 
-import breeze.stats.distributions.Beta
 import com.edouardfouche.monitoring.bandits.{BanditTS,BanditAdwin}
 import com.edouardfouche.monitoring.rewards.Reward
 import com.edouardfouche.monitoring.scalingstrategies.ScalingStrategy
@@ -21,55 +20,40 @@ case class MPTS_ADWIN(delta: Double)(val stream: Simulator, val reward: Reward,
   val name = s"MP-TS-ADWIN-$delta"
 
   def next: (Array[(Int, Int)], Array[Double], Double) = {
-    val draws = beta_params.zipWithIndex.map(x => (x._2, new Beta(x._1._1,x._1._2).draw())).sortBy(- _._2).take(k)
-    val indexes = draws.map(_._1)
+    val draws = drawAll()
+    val indexes = topk.largest(draws, k)
     val arms = indexes.map(combinations(_))
 
     val newValues = stream.nextAndCompute(indexes)
     if (newValues.isEmpty) return (Array[(Int, Int)](), Array[Double](), 0)
 
-    val updates = scala.collection.mutable.Map[Int, Double]()
+    val gains = observe(indexes, newValues)
+    var i = 0
+    while(i < indexes.length) {
+      alpha(indexes(i)) += gains(i)
+      beta(indexes(i)) += 1.0 - gains(i)
 
-    val gains = (indexes zip newValues).map(x => {
-      val d = reward.getReward(x._2, currentMatrix(x._1))
-      currentMatrix(x._1) = x._2
-      beta_params(x._1) = (beta_params(x._1)._1+d, beta_params(x._1)._2+(1.0-d))
-      counts(x._1) += 1.0
-      sums(x._1) += d
-
-      // Add into adwin and add the update into the map
-      sharedAdwin.addElement(x._1, d)
-      updates(x._1) = d
-      d
-    })
-    history = history :+ updates
-    t += 1
+      // Add into adwin
+      sharedAdwin.addElement(indexes(i), gains(i))
+      i += 1
+    }
+    history.add(indexes, gains)
+    t = t + 1
 
     k = scalingstrategy.scale(gains, indexes, sums, counts, t)
 
-    // Here we, add up the size of the adwin (those are the number of pulls) and the number of unpulls, to get the
-    // actual size of window each arm.
-    val windows = (0 until narms).map(x => (x, sharedAdwin.getSingleSize(x) + (history.length-counts(x))))
-
-    val smallest_window = windows.minBy(_._2) // this is the smallest window
-
-    // Rolling back
-    if(smallest_window._2.toInt < history.length) {
-      for{
-        x <- smallest_window._2.toInt until history.length
-      } {
-        val rollback = history.head
-        history = history.tail
-        for((key,value) <- rollback) {
-          sums(key) = sums(key) - value // if(counts(key) == 1.0) 1.0 else weights(key) - (1.0/(counts(key)-1.0))*(value._1 - weights(key))
-          counts(key) = counts(key) - 1 //- value._2
-          beta_params(key) = (beta_params(key)._1-value, beta_params(key)._2-(1.0-value))
-        }
-      }
-    }
+    // Roll back the history to the smallest window
+    rollback()
     t = history.length + 1 // The time context is the same as the history, which is the same as the smallest window
 
     (arms, gains, gains.sum)
   }
 
+  // The posterior also forgets the rolled back updates
+  override def forget(arm: Int, value: Double): Unit = {
+    super.forget(arm, value)
+    alpha(arm) = alpha(arm) - value
+    beta(arm) = beta(arm) - (1.0-value)
+  }
+
 }
@@ -0,0 +1,54 @@
+package com.edouardfouche.monitoring.bandits.oracles
+
+import com.edouardfouche.monitoring.bandits.Bandit
+
+/**
+  * General trait for the oracles which look at the outcome of every arm at each round (e.g., OracleDynamic).
+  * The outcomes of the next rounds are read from the stream by batches (see Simulator.nextBatchAndCompute), instead of
+  * one round at a time.
+  *
+  * @note The whole batch is read by the call of next which starts it, i.e., in one call out of batchsize. The cpuTime
+  *       and wallTime of the oracles recorded at each iteration (see BanditExperiment.runner) are thus spiky: only
+  *       their sum over the iterations is comparable to the one of the other bandits.
+  */
+trait BatchedOracle extends Bandit {
+  private val allindexes: Array[Int] = combinations.indices.toArray
+  val batchsize: Int = ((1 << 20) / narms).max(1).min(64) // at most about 8 MB, unless there are more arms
+  private val batch: Array[Double] = new Array[Double](batchsize * narms)
+  private var nrounds = 0 // the number of rounds in the batch
+  private var position = 0 // the next round in the batch
+  private var offset = 0 // the position of the current round in the batch
+
+  override def reset: Unit = {
+    super.reset
+    nrounds = 0
+    position = 0
+  }
+
+  /**
+    * Move on to the next round of the stream, and compute the reward of every arm in this round
+    * @return the reward of each arm, in the scratch space of the arm state, or an empty array if the stream has ended
+    */
+  def nextRewards(): Array[Double] = {
+    if(position == nrounds) {
+      nrounds = stream.nextBatchAndCompute(batchsize, allindexes, batch)
+      position = 0
+    }
+    if (nrounds == 0) return Array[Double]()
+    offset = position * narms
+    position += 1
+
+    val rewards = state.scores
+    var x = 0
+    while(x < narms) {
+      rewards(x) = reward.getReward(batch(offset + x), state.values(x))
+      x += 1
+    }
+    rewards
+  }
+
+  /**
+    * @return the outcome of an arm in the current round
+    */
+  @inline def outcome(arm: Int): Double = batch(offset + arm)
+}
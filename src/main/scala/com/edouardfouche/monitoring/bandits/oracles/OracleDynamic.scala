@@ -1,6 +1,5 @@
 package com.edouardfouche.monitoring.bandits.oracles
 
-import com.edouardfouche.monitoring.bandits.Bandit
 import com.edouardfouche.monitoring.rewards.Reward
 import com.edouardfouche.monitoring.scalingstrategies.ScalingStrategy
 import com.edouardfouche.streamsimulator.Simulator
@@ -14,28 +13,28 @@ import com.edouardfouche.streamsimulator.Simulator
   * @param scalingstrategy the scaling strategy, which decides how many arms to pull for the next step
   * @param k the initial number of pull per round
   */
-case class OracleDynamic(stream: Simulator, reward: Reward, scalingstrategy: ScalingStrategy, var k: Int) extends Bandit {
+case class OracleDynamic(stream: Simulator, reward: Reward, scalingstrategy: ScalingStrategy, var k: Int) extends BatchedOracle {
   val name: String = "OD"
 
-
   def next: (Array[(Int, Int)], Array[Double], Double) = {
-    val newMatrix = stream.nextAndCompute(combinations.zipWithIndex.map(_._2))
-    if (newMatrix.isEmpty) return (Array[(Int, Int)](), Array[Double](), 0)
-
     // Find the top-k arms
-    val diffMatrix = newMatrix.zip(currentMatrix.toArray).map(x => reward.getReward(x._1, x._2))
+    val diffMatrix = nextRewards()
+    if (diffMatrix.isEmpty) return (Array[(Int, Int)](), Array[Double](), 0)
 
     // Update the current Matrix
-    val topindexes = diffMatrix.zipWithIndex.sortBy(-_._1).map(_._2).take(k)
+    val topindexes = topk.largest(diffMatrix, k)
     val toparms = topindexes.map(combinations(_))
-    topindexes.foreach(x => {
-      currentMatrix(x) = newMatrix(x)
-      counts(x) += 1.0
-      sums(x) += diffMatrix(x)
-    })
-
     // Sum up the gain of the top arms / top indexes
-    val gains = topindexes.map(diffMatrix(_))
+    val gains = new Array[Double](topindexes.length)
+    var i = 0
+    while(i < topindexes.length) {
+      val arm = topindexes(i)
+      state.values(arm) = outcome(arm)
+      counts(arm) += 1.0
+      sums(arm) += diffMatrix(arm)
+      gains(i) = diffMatrix(arm)
+      i += 1
+    }
 
     t += 1
     k = scalingstrategy.scale(gains, topindexes, sums, counts, t)
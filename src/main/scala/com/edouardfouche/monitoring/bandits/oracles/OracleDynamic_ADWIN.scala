@@ -17,60 +17,37 @@ import com.edouardfouche.streamsimulator.Simulator
   * @param scalingstrategy the scaling strategy, which decides how many arms to pull for the next step
   * @param k the initial number of pull per round
   */
-case class OracleDynamic_ADWIN(delta: Double)(val stream: Simulator, val reward: Reward, val scalingstrategy: ScalingStrategy, var k: Int) extends BanditAdwin {
+case class OracleDynamic_ADWIN(delta: Double)(val stream: Simulator, val reward: Reward, val scalingstrategy: ScalingStrategy, var k: Int) extends BanditAdwin with BatchedOracle {
   val name: String = s"OD-ADWIN-$delta"
 
   def next: (Array[(Int, Int)], Array[Double], Double) = {
     // OptimalBandit: compute the whole matrix and the choose the top-k arm with hinsight on this round
-    val newMatrix = stream.nextAndCompute(combinations.zipWithIndex.map(_._2))
-    if (newMatrix.isEmpty) return (Array[(Int, Int)](), Array[Double](), 0)
-
-    // Find the top-k arms
-    val diffMatrix = newMatrix.toArray.zip(currentMatrix.toArray).map(x => reward.getReward(x._1, x._2))
+    val diffMatrix = nextRewards()
+    if (diffMatrix.isEmpty) return (Array[(Int, Int)](), Array[Double](), 0)
 
     // Update the current Matrix
-    val topindexes = diffMatrix.zipWithIndex.sortBy(-_._1).map(_._2).take(k)
+    val topindexes = topk.largest(diffMatrix, k)
     val toparms = topindexes.map(combinations(_))
 
-    val updates = scala.collection.mutable.Map[Int, Double]()
-
     topindexes.foreach(x => {
       val d = diffMatrix(x)
-      currentMatrix(x) = newMatrix(x)
+      currentMatrix(x) = outcome(x)
       counts(x) += 1.0
       sums(x) += d
-      // Add into adwin and add the update into the map
+      // Add into adwin
       sharedAdwin.addElement(x, d)
-      updates(x) = d
     })
 
     // Sum up the gain of the top arms / top indexes
     val gains = topindexes.map(diffMatrix(_))
 
-    history = history :+ updates
+    history.add(topindexes, gains)
     t += 1
 
     k = scalingstrategy.scale(gains, topindexes, sums, counts, t)
 
-    // Here we, add up the size of the adwin (those are the number of pulls) and the number of unpulls, to get the
-    // actual size of each pulled arm.
-    val windows = (0 until narms).map(x => (x, sharedAdwin.getSingleSize(x) + (history.length-counts(x))))
-
-    val smallest_window = windows.minBy(_._2) // this is the smallest window
-
-    // Rolling back
-    if(smallest_window._2.toInt < history.length) {
-      for{
-        x <- smallest_window._2.toInt until history.length
-      } {
-        val rollback = history.head
-        history = history.tail
-        for((key,value) <- rollback) {
-          sums(key) = sums(key) - value
-          counts(key) = counts(key) - 1
-        }
-      }
-    }
+    // Roll back the history to the smallest window
+    rollback()
     t = history.length // The time context is the same as the history, which is the same as the smallest window
 
     (toparms, gains, gains.sum)
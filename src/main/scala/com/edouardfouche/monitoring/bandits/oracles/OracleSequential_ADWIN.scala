@@ -34,45 +34,25 @@ case class OracleSequential_ADWIN(delta: Double)(val stream: Simulator, val rewa
     val newValues = stream.nextAndCompute(indexes)
     if (newValues.isEmpty) return (Array[(Int, Int)](), Array[Double](), 0)
 
-    val updates = scala.collection.mutable.Map[Int, Double]()
-
     val gains = (indexes zip newValues).map(x => {
       val d = reward.getReward(x._2, currentMatrix(x._1))
       currentMatrix(x._1) = x._2 // replace
       counts(x._1) += 1.0
       sums(x._1) += d
 
-      // Add into adwin and add the update into the map
+      // Add into adwin
       sharedAdwin.addElement(x._1, d)
-      updates(x._1) = d
       d
     })
 
     position = (position + k)% narms
 
-    history = history :+ updates
+    history.add(indexes, gains)
     t += 1
     k = scalingstrategy.scale(gains, indexes, sums, counts, t)
 
-    // Here we, add up the size of the adwin (those are the number of pulls) and the number of unpulls, to get the
-    // actual size of each pulled arm.
-    val windows = (0 until narms).map(x => (x, sharedAdwin.getSingleSize(x) + (history.length-counts(x))))
-
-    val smallest_window = windows.minBy(_._2) // this is the smallest window
-
-    // Rolling back
-    if(smallest_window._2.toInt < history.length) {
-      for{
-        x <- smallest_window._2.toInt until history.length
-      } {
-        val rollback = history.head
-        history = history.tail
-        for((key,value) <- rollback) {
-          sums(key) = sums(key) - value
-          counts(key) = counts(key) - 1
-        }
-      }
-    }
+    // Roll back the history to the smallest window
+    rollback()
     t = history.length // The time context is the same as the history, which is the same as the smallest window
 
     (arms, gains, gains.sum)
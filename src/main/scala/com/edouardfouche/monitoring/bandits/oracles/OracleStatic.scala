@@ -18,15 +18,13 @@ import com.edouardfouche.streamsimulator.Simulator
 case class OracleStatic(stream: Simulator, reward: Reward, scalingstrategy: ScalingStrategy, var k: Int) extends Bandit {
   val name: String = "OS"
 
-  val cache: Array[Array[Double]] = stream.cache
-
   def get_top_indexes_hindsight: Array[Int] = {
     val hindsightmatrix = currentMatrix
-    var totalrewards: linalg.Vector[Double] = linalg.Vector(cache(0).indices.map(x => 0.0).toArray)
+    var totalrewards: linalg.Vector[Double] = linalg.Vector(Array.fill(stream.npairs)(0.0))
     for {
-      x <- cache.indices
+      x <- 0 until stream.nbatches
     } {
-      val rewards = cache(x).zipWithIndex.map { x =>
+      val rewards = stream.cachedRow(x).zipWithIndex.map { x =>
         val r = reward.getReward(x._1, hindsightmatrix(x._2))
         hindsightmatrix(x._2) = r
         r
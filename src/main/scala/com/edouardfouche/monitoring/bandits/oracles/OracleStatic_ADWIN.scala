@@ -21,15 +21,13 @@ import com.edouardfouche.streamsimulator.Simulator
 case class OracleStatic_ADWIN(delta: Double)(val stream: Simulator, val reward: Reward, val scalingstrategy: ScalingStrategy, var k: Int) extends BanditAdwin {
   val name: String = s"OS-ADWIN-$delta"
 
-  val cache: Array[Array[Double]] = stream.cache
-
   def get_top_indexes_hindsight: Array[Int] = {
     val hindsightmatrix = currentMatrix
-    var totalrewards: linalg.Vector[Double] = linalg.Vector(cache(0).indices.map(x => 0.0).toArray)
+    var totalrewards: linalg.Vector[Double] = linalg.Vector(Array.fill(stream.npairs)(0.0))
     for {
-      x <- cache.indices
+      x <- 0 until stream.nbatches
     } {
-      val rewards = cache(x).zipWithIndex.map { x =>
+      val rewards = stream.cachedRow(x).zipWithIndex.map { x =>
         val r = reward.getReward(x._1, hindsightmatrix(x._2))
         hindsightmatrix(x._2) = r
         r
@@ -47,43 +45,23 @@ case class OracleStatic_ADWIN(delta: Double)(val stream: Simulator, val reward:
     val newValues = stream.nextAndCompute(top_indexes)
     if (newValues.isEmpty) return (Array[(Int, Int)](), Array[Double](), 0)
 
-    val updates = scala.collection.mutable.Map[Int, Double]()
-
     val gains = (top_indexes zip newValues).map(x => {
       val d = reward.getReward(x._2, currentMatrix(x._1))
       currentMatrix(x._1) = x._2 // replace
       counts(x._1) += 1.0
       sums(x._1) += d
 
-      // Add into adwin and add the update into the map
+      // Add into adwin
       sharedAdwin.addElement(x._1, d)
-      updates(x._1) = d
       d
     })
 
-    history = history :+ updates
+    history.add(top_indexes, gains)
     t += 1
     k = scalingstrategy.scale(gains, top_indexes, sums, counts, t)
 
-    // Here we, add up the size of the adwin (those are the number of pulls) and the number of unpulls, to get the
-    // actual size of each pulled arm.
-    val windows = (0 until narms).map(x => (x, sharedAdwin.getSingleSize(x) + (history.length-counts(x))))
-
-    val smallest_window = windows.minBy(_._2) // this is the smallest window
-
-    // Rolling back
-    if(smallest_window._2.toInt < history.length) {
-      for{
-        x <- smallest_window._2.toInt until history.length
-      } {
-        val rollback = history.head
-        history = history.tail
-        for((key,value) <- rollback) {
-          sums(key) = sums(key) - value
-          counts(key) = counts(key) - 1
-        }
-      }
-    }
+    // Roll back the history to the smallest window
+    rollback()
     t = history.length // The time context is the same as the history, which is the same as the smallest window
 
     (top_arms, gains, gains.sum)
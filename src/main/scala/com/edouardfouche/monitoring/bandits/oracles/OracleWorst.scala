@@ -1,6 +1,5 @@
 package com.edouardfouche.monitoring.bandits.oracles
 
-import com.edouardfouche.monitoring.bandits.Bandit
 import com.edouardfouche.monitoring.rewards.Reward
 import com.edouardfouche.monitoring.scalingstrategies.ScalingStrategy
 import com.edouardfouche.streamsimulator.Simulator
@@ -15,23 +14,21 @@ import com.edouardfouche.streamsimulator.Simulator
   *
   * @note In fact, not useful at all. We use it simply to check what is the worst case scenario
   */
-case class OracleWorst(stream: Simulator, reward: Reward, scalingstrategy: ScalingStrategy, var k: Int) extends Bandit {
+case class OracleWorst(stream: Simulator, reward: Reward, scalingstrategy: ScalingStrategy, var k: Int) extends BatchedOracle {
   val name: String = "OW"
 
   // return a vector a 2-tuples (arms) and a gain
   def next: (Array[(Int, Int)],Array[Double], Double) = {
-    val newMatrix = stream.nextAndCompute(combinations.zipWithIndex.map(_._2))
-    if (newMatrix.isEmpty) return (Array[(Int, Int)](), Array[Double](), 0)
-
     // Find the worst-k arms
-    val diffMatrix = newMatrix.zip(currentMatrix.toArray).map(x => reward.getReward(x._1, x._2))
+    val diffMatrix = nextRewards()
+    if (diffMatrix.isEmpty) return (Array[(Int, Int)](), Array[Double](), 0)
 
-    val worstindexes = diffMatrix.zipWithIndex.sortBy(_._1).map(_._2).take(k)
+    val worstindexes = topk.smallest(diffMatrix, k)
     val worstarms = worstindexes.map(combinations(_))
 
     // Update the current Matrix
     worstindexes.foreach(x => {
-      currentMatrix(x) = newMatrix(x)
+      currentMatrix(x) = outcome(x)
       counts(x) += 1.0
       sums(x) += diffMatrix(x) // (http://www.cs.cmu.edu/~rsalakhu/10703/Lecture_Exploration.pdf slide 12)
     })
@@ -1,6 +1,5 @@
 package com.edouardfouche.monitoring.bandits.stationary
 
-import breeze.stats.distributions.Beta
 import com.edouardfouche.monitoring.bandits.BanditTS
 import com.edouardfouche.monitoring.rewards.Reward
 import com.edouardfouche.monitoring.scalingstrategies.ScalingStrategy
@@ -19,22 +18,21 @@ case class CTS(stream: Simulator, reward: Reward, scalingstrategy: ScalingStrate
   val name = "CTS"
 
   def next: (Array[(Int, Int)], Array[Double], Double) = {
-    val draws = beta_params.zipWithIndex.map(x => (x._2, new Beta(x._1._1,x._1._2).draw())).sortBy(- _._2).take(k)
-    val indexes = draws.map(_._1)
+    val draws = drawAll()
+    val indexes = topk.largest(draws, k)
     val arms = indexes.map(combinations(_))
 
     val newValues = stream.nextAndCompute(indexes)
     if (newValues.isEmpty) return (Array[(Int, Int)](), Array[Double](), 0)
 
-    val gains = (indexes zip newValues).map(x => {
-      val d = reward.getReward(x._2, currentMatrix(x._1))
-      val y = if(math.random < d) 1.0 else 0.0
-      beta_params(x._1) = (beta_params(x._1)._1+y, beta_params(x._1)._2+(1.0-y))
-      currentMatrix(x._1) = x._2 // replace
-      counts(x._1) += 1.0
-      sums(x._1)  += d
-      d
-    })
+    val gains = observe(indexes, newValues)
+    var i = 0
+    while(i < indexes.length) {
+      val y = if(math.random < gains(i)) 1.0 else 0.0
+      alpha(indexes(i)) += y
+      beta(indexes(i)) += 1.0 - y
+      i += 1
+    }
 
     t += 1
     k = scalingstrategy.scale(gains, indexes, sums, counts, t)
@@ -1,6 +1,5 @@
 package com.edouardfouche.monitoring.bandits.stationary
 
-import breeze.stats.distributions.Beta
 import com.edouardfouche.monitoring.bandits.BanditTS
 import com.edouardfouche.monitoring.rewards.Reward
 import com.edouardfouche.monitoring.scalingstrategies.ScalingStrategy
@@ -23,27 +22,43 @@ case class IMPTS(stream: Simulator, reward: Reward, scalingstrategy: ScalingStra
 
   def next: (Array[(Int, Int)], Array[Double], Double) = {
     // The difference with MPTS is that only one arm is used for exploration, the rest is exploitation.
-    val draws = beta_params.zipWithIndex.map(x => (x._2, x._1._1 / (x._1._1 + x._1._2))).sortBy(- _._2) // get the empirical average from distributions
-    val exploitdraws = draws.take(k-1)
-    val exploredraw = draws.drop(k-1).map(x =>
-       (x._1, new Beta(beta_params(x._1)._1, beta_params(x._1)._2).draw())
-    ).maxBy(_._2)
+    val means = state.scores
+    var x = 0
+    while(x < narms) { // get the empirical average from distributions
+      means(x) = alpha(x) / (alpha(x) + beta(x))
+      x += 1
+    }
+    val exploitindexes = topk.largest(means, k-1)
+    exploitindexes.foreach(x => state.pulled(x) = true)
+    var exploreindex = -1
+    var exploredraw = 0.0
+    x = 0
+    while(x < narms) {
+      if(!state.pulled(x)) {
+        val draw = sampler.draw(alpha(x), beta(x))
+        if(exploreindex == -1 || draw > exploredraw) {
+          exploreindex = x
+          exploredraw = draw
+        }
+      }
+      x += 1
+    }
+    exploitindexes.foreach(x => state.pulled(x) = false)
 
-    val indexes = (exploitdraws :+ exploredraw).map(_._1)
+    val indexes = exploitindexes :+ exploreindex
     val arms = indexes.map(combinations(_))
 
     val newValues = stream.nextAndCompute(indexes)
     if (newValues.isEmpty) return (Array[(Int, Int)](), Array[Double](), 0)
 
     // Update the current Matrix and compute the diff at the same time
-    val gains = (indexes zip newValues).map(x => {
-      val d = reward.getReward(x._2,currentMatrix(x._1))
-      beta_params(x._1) = (beta_params(x._1)._1+d, beta_params(x._1)._2+(1.0-d))
-      currentMatrix(x._1) = x._2 // replace
-      counts(x._1) += 1.0
-      sums(x._1) += d // (http://www.cs.cmu.edu/~rsalakhu/10703/Lecture_Exploration.pdf slide 12)
-      d
-    })
+    val gains = observe(indexes, newValues)
+    var i = 0
+    while(i < indexes.length) {
+      alpha(indexes(i)) += gains(i)
+      beta(indexes(i)) += 1.0 - gains(i)
+      i += 1
+    }
 
     t += 1
     k = scalingstrategy.scale(gains, indexes, sums, counts, t)
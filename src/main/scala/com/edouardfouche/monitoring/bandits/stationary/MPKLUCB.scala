@@ -23,22 +23,14 @@ case class MPKLUCB(stream: Simulator, reward: Reward, scalingstrategy: ScalingSt
   val name = "MP-KLUCB"
 
   def next: (Array[(Int, Int)], Array[Double], Double) = {
-    val klindices:Array[(Int,Double)] = (0 until narms).map(x => if(t==0 | counts(x) == 0.0) (x,1.0) else (x,getKLUCBupper(x,t))).toArray
-
-    val indexes = klindices.sortBy(-_._2).map(_._1).take(k)
+    val indexes = largestKLUCB(t, k)
 
     val arms = indexes.map(combinations(_))
 
     val newValues = stream.nextAndCompute(indexes)
     if (newValues.isEmpty) return (Array[(Int, Int)](), Array[Double](), 0)
 
-    val gains = (indexes zip newValues).map(x => {
-      val d = reward.getReward(x._2, currentMatrix(x._1))
-      currentMatrix(x._1) = x._2 // replace
-      counts(x._1) += 1
-      sums(x._1) += d
-      d
-    })
+    val gains = observe(indexes, newValues)
     t = t + 1
 
     k = scalingstrategy.scale(gains, indexes, sums, counts, t)
@@ -4,6 +4,7 @@ import com.edouardfouche.monitoring.bandits.BanditKLUCB
 import com.edouardfouche.monitoring.rewards.Reward
 import com.edouardfouche.monitoring.scalingstrategies.ScalingStrategy
 import com.edouardfouche.streamsimulator.Simulator
+import com.edouardfouche.utils.KLUCB
 
 /**
   * KL-UCB with multiple plays
@@ -22,38 +23,17 @@ import com.edouardfouche.streamsimulator.Simulator
 case class MPKLUCBPLUS(stream: Simulator, reward: Reward, scalingstrategy: ScalingStrategy, var k: Int) extends BanditKLUCB {
   val name = "MP-KLUCBPLUS"
 
-  override def getKLUCBupper(arm: Int, t: Double): Double = {
-    val logndn = scala.math.log(t/ counts(arm)) / counts(arm) // alternative: KL-UCB+ scala.math.log(t/ counts(arm)) / counts(arm)
-    val p: Double = (sums(arm)/counts(arm)).max(Ndelta)
-    if(p >= 1.0) return 1.0
-
-    var q = p + Ndelta
-    for(i <- 1 to maxiter) {
-      val f = logndn - kl(p,q)
-      val df = -dkl(p,q)
-      if(f*f < eps) return q // newton's method has converged
-      q = (1.0-Ndelta).min((q - f/df).max(p+Ndelta))
-    }
-    q
-  }
+  override val exploration: (Double, Double) => Double = KLUCB.explorationPlus // log(t/ counts(arm)) / counts(arm)
 
   def next: (Array[(Int, Int)], Array[Double], Double) = {
-    val klindices:Array[(Int,Double)] = (0 until narms).map(x => if(t==0 | counts(x) == 0.0) (x,1.0) else (x,getKLUCBupper(x,t))).toArray
-
-    val indexes = klindices.sortBy(-_._2).map(_._1).take(k)
+    val indexes = largestKLUCB(t, k)
 
     val arms = indexes.map(combinations(_))
 
     val newValues = stream.nextAndCompute(indexes)
     if (newValues.isEmpty) return (Array[(Int, Int)](), Array[Double](), 0)
 
-    val gains = (indexes zip newValues).map(x => {
-      val d = reward.getReward(x._2, currentMatrix(x._1))
-      currentMatrix(x._1) = x._2 // replace
-      counts(x._1) += 1
-      sums(x._1) += d
-      d
-    })
+    val gains = observe(indexes, newValues)
     t = t + 1
 
     k = scalingstrategy.scale(gains, indexes, sums, counts, t)
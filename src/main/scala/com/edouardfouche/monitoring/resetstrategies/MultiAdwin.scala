@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.monitoring.resetstrategies
+
+/**
+  * ADWIN for many arms at once, i.e., one ADWIN window per arm, with the same detections as the original
+  * implementation from Bifet (abifet.ADWIN) on the same inputs.
+  *
+  * The exponential histogram of each window is a list of rows of buckets, as in abifet.ADWIN: row i holds up to
+  * maxBuckets buckets of 2^i elements, the oldest first. Here, the rows of all the windows are slabs of primitive arrays
+  * shared by the arms (the totals and variances of the buckets, and the links between the rows of a window), and the
+  * state of each window is one entry in a few arrays. Thus, there is no object per arm or per row, and the rows freed
+  * by a window are reused by the others.
+  *
+  * The cut detection is the same as in abifet.ADWIN, minus the variances of the sub-windows (which the cut expression
+  * does not use), and with the terms which only depend on the window (the log term and the variance) computed once
+  * per pass over the buckets instead of once per bucket.
+  *
+  * @param narms the number of arms
+  * @param delta the parameter for ADWIN (upper bound for the false positive rate)
+  */
+class MultiAdwin(val narms: Int, val delta: Double = MultiAdwin.DELTA) {
+  import MultiAdwin._
+
+  // The state of the window of each arm
+  private val widths = new Array[Int](narms)
+  private val totals = new Array[Double](narms)
+  private val variances = new Array[Double](narms)
+  private val times = new Array[Int](narms) // the number of inputs
+  private val detects = new Array[Int](narms) // the time of the last detection
+  private val ndetections = new Array[Int](narms)
+  private val heads = new Array[Int](narms) // the first row (of buckets of 1 element)
+  private val tails = new Array[Int](narms) // the last row
+  private val lastRows = new Array[Int](narms) // the index of the last row
+
+  // The rows, shared by the arms. The buckets of row r are at r*slots until r*slots + sizes(r) - 1.
+  private val slots = maxBuckets + 1
+  private var sizes = new Array[Int](narms + narms / 2 + 16)
+  private var next = new Array[Int](sizes.length) // the next row of the window (or the next free row), -1 if none
+  private var previous = new Array[Int](sizes.length) // the previous row of the window, -1 if none
+  private var bucketTotals = new Array[Double](sizes.length * slots)
+  private var bucketVariances = new Array[Double](sizes.length * slots)
+  private var allocated = narms // the rows from allocated on were never used
+  private var free = -1 // the first free row
+
+  // Each window starts with one empty row, arm x has row x.
+  (0 until narms).foreach { x =>
+    heads(x) = x
+    tails(x) = x
+    next(x) = -1
+    previous(x) = -1
+  }
+
+  def width(arm: Int): Int = widths(arm)
+  def total(arm: Int): Double = totals(arm)
+  def estimation(arm: Int): Double = totals(arm) / widths(arm)
+  def variance(arm: Int): Double = variances(arm) / widths(arm)
+  def detect(arm: Int): Boolean = detects(arm) == times(arm) // whether the last input of this arm triggered a cut
+  def numberDetections(arm: Int): Int = ndetections(arm)
+
+  /**
+    * Add an element to the window of each arm, one after the other
+    * @param arms the arms
+    * @param values the element for each arm
+    * @return the number of inputs which triggered a cut
+    */
+  def addElements(arms: Array[Int], values: Array[Double]): Int = {
+    require(arms.length == values.length, "There must be one value per arm")
+    var changes = 0
+    var i = 0
+    while(i < arms.length) {
+      if(addElement(arms(i), values(i))) changes += 1
+      i += 1
+    }
+    changes
+  }
+
+  /**
+    * Add an element to the window of an arm, and shrink the window if a change is detected
+    * (as abifet.ADWIN.setInput)
+    * @return whether a change was detected
+    */
+  def addElement(arm: Int, value: Double): Boolean = {
+    var change = false
+    times(arm) += 1
+    insertElement(arm, value)
+
+    if(times(arm) % clock == 0 && widths(arm) > minLongitudWindow) {
+      var reduce = true
+      while(reduce) {
+        reduce = false
+        var exit = false
+        var n0 = 0
+        var n1 = widths(arm)
+        var u0 = 0.0
+        var u1 = totals(arm)
+        var dd = Double.NaN // the log term and the variance of the window, computed on first use
+        var v = Double.NaN
+
+        var row = tails(arm)
+        var i = lastRows(arm)
+        do {
+          val size = sizes(row)
+          var k = 0
+          while(k < size && !exit) {
+            val u2 = bucketTotals(row * slots + k)
+            n0 += 1 << i
+            n1 -= 1 << i
+            u0 += u2
+            u1 -= u2
+
+            if(i == 0 && k == size - 1) exit = true
+            else {
+              val absvalue = (u0 / n0) - (u1 / n1)
+              if(n1 > minWindowLength + 1 && n0 > minWindowLength + 1) {
+                if(java.lang.Double.isNaN(dd)) {
+                  dd = Math.log(2 * Math.log(widths(arm)) / delta)
+                  v = variances(arm) / widths(arm)
+                }
+                val m = (1.0 / (n0 - minWindowLength + 1)) + (1.0 / (n1 - minWindowLength + 1))
+                val epsilon = Math.sqrt(2 * m * v * dd) + 2.0 / 3 * dd * m
+                if(Math.abs(absvalue) > epsilon) {
+                  detects(arm) = times(arm)
+                  reduce = true
+                  change = true
+                  if(widths(arm) > 0) {
+                    deleteElement(arm)
+                    exit = true
+                  }
+                }
+              }
+            }
+            k += 1
+          }
+          row = previous(row)
+          i -= 1
+        } while(!exit && row >= 0)
+      }
+    }
+
+    if(change) ndetections(arm) += 1
+    change
+  }
+
+  private def insertElement(arm: Int, value: Double): Unit = {
+    widths(arm) += 1
+    insertBucket(heads(arm), value, 0.0)
+    val w = widths(arm)
+    var incVariance = 0.0
+    if(w > 1) incVariance = (w - 1) * (value - totals(arm) / (w - 1)) * (value - totals(arm) / (w - 1)) / w
+    variances(arm) += incVariance
+    totals(arm) += value
+    compressBuckets(arm)
+  }
+
+  // Merge the two oldest buckets of each full row into the next row
+  private def compressBuckets(arm: Int): Unit = {
+    var row = heads(arm)
+    var i = 0
+    var compressing = true
+    while(compressing && row >= 0) {
+      if(sizes(row) == maxBuckets + 1) {
+        var nextRow = next(row)
+        if(nextRow < 0) {
+          nextRow = allocate()
+          next(row) = nextRow
+          previous(nextRow) = row
+          tails(arm) = nextRow
+          lastRows(arm) += 1
+        }
+        val n1 = 1 << i
+        val n2 = 1 << i
+        val b = row * slots
+        val u1 = bucketTotals(b) / n1
+        val u2 = bucketTotals(b + 1) / n2
+        val incVariance = n1 * n2 * (u1 - u2) * (u1 - u2) / (n1 + n2)
+        insertBucket(nextRow, bucketTotals(b) + bucketTotals(b + 1),
+          bucketVariances(b) + bucketVariances(b + 1) + incVariance)
+        removeBuckets(row, 2)
+        if(sizes(nextRow) <= maxBuckets) compressing = false
+      } else compressing = false
+      row = next(row)
+      i += 1
+    }
+  }
+
+  // Remove the oldest bucket of the window
+  private def deleteElement(arm: Int): Unit = {
+    val row = tails(arm)
+    val b = row * slots
+    val n1 = 1 << lastRows(arm)
+    widths(arm) -= n1
+    totals(arm) -= bucketTotals(b)
+    val w = widths(arm)
+    val u1 = bucketTotals(b) / n1
+    val incVariance = bucketVariances(b) + n1 * w * (u1 - totals(arm) / w) * (u1 - totals(arm) / w) / (n1 + w)
+    variances(arm) -= incVariance
+
+    removeBuckets(row, 1)
+    if(sizes(row) == 0) {
+      tails(arm) = previous(row)
+      next(tails(arm)) = -1
+      release(row)
+      lastRows(arm) -= 1
+    }
+  }
+
+  private def insertBucket(row: Int, total: Double, variance: Double): Unit = {
+    val b = row * slots + sizes(row)
+    bucketTotals(b) = total
+    bucketVariances(b) = variance
+    sizes(row) += 1
+  }
+
+  // Remove the n oldest buckets of a row
+  private def removeBuckets(row: Int, n: Int): Unit = {
+    val b = row * slots
+    System.arraycopy(bucketTotals, b + n, bucketTotals, b, sizes(row) - n)
+    System.arraycopy(bucketVariances, b + n, bucketVariances, b, sizes(row) - n)
+    sizes(row) -= n
+  }
+
+  private def allocate(): Int = {
+    val row = if(free >= 0) {
+      val r = free
+      free = next(r)
+      r
+    } else {
+      if(allocated == sizes.length) grow()
+      allocated += 1
+      allocated - 1
+    }
+    sizes(row) = 0
+    next(row) = -1
+    previous(row) = -1
+    row
+  }
+
+  private def release(row: Int): Unit = {
+    next(row) = free
+    free = row
+  }
+
+  private def grow(): Unit = {
+    val capacity = sizes.length * 2
+    sizes = java.util.Arrays.copyOf(sizes, capacity)
+    next = java.util.Arrays.copyOf(next, capacity)
+    previous = java.util.Arrays.copyOf(previous, capacity)
+    bucketTotals = java.util.Arrays.copyOf(bucketTotals, capacity * slots)
+    bucketVariances = java.util.Arrays.copyOf(bucketVariances, capacity * slots)
+  }
+}
+
+object MultiAdwin {
+  // The constants of abifet.ADWIN
+  val DELTA: Double = .002
+  val maxBuckets: Int = 5
+  val minLongitudWindow: Int = 10
+  val minWindowLength: Int = 5
+  val clock: Int = 32
+}
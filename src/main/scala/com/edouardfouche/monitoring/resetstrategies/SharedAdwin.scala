@@ -16,29 +16,63 @@
  */
 package com.edouardfouche.monitoring.resetstrategies
 
-import abifet.ADWIN // We use the original implementation from Bifet
+import com.edouardfouche.utils.IndexedMinHeap
 
 /**
   * This a "shared" ADWIN instance between k arms.
-  * In fact, it holds k instances of ADWIN, one for each arm.
+  * In fact, it holds k instances of ADWIN, one for each arm (in a single MultiAdwin, with the same detections as the
+  * original implementation from Bifet).
   * However, the actual window of the size of the smallest window
   *
+  * The widths of the ADWIN instances are kept in an indexed min-heap, which is updated when an element is added, so
+  * that the smallest window is found in O(1) instead of scanning the k instances. Likewise, the number of instances
+  * that detected a change at their last element is maintained incrementally.
+  *
   * @param k A number of arms
   * @param delta the parameter for ADWIN (upper bound for the false positive rate)
   */
 class SharedAdwin(k: Int, val delta: Double = 0.1) {
-  val adwins: scala.collection.immutable.Map[Int, ADWIN] = (0 until k).map(x =>
-    x -> new ADWIN(delta)).toMap
+  val adwins: MultiAdwin = new MultiAdwin(k, delta)
+  private val widths = new IndexedMinHeap(k, adwins.width(_).toDouble)
+  private val detects: Array[Boolean] = Array.tabulate(k)(adwins.detect)
+  private var ndetects: Int = detects.count(identity)
+
+  def addElement(x: Int, element: Double): Unit = {
+    adwins.addElement(x, element)
+    refresh(x)
+  }
+
+  /**
+    * Add an element for each arm, one after the other (see MultiAdwin.addElements)
+    * @param arms the indexes of the arms
+    * @param elements the element for each arm
+    */
+  def addElements(arms: Array[Int], elements: Array[Double]): Unit = {
+    adwins.addElements(arms, elements)
+    var i = 0
+    while(i < arms.length) {
+      refresh(arms(i))
+      i += 1
+    }
+  }
 
-  def addElement(x: Int, element: Double) = adwins(x).setInput(element)
+  // Update the width and the detection of an arm in the heap and in the counter, after its window changed
+  private def refresh(x: Int): Unit = {
+    widths(x) = adwins.width(x)
+    val detect = adwins.detect(x)
+    if(detect != detects(x)) {
+      detects(x) = detect
+      ndetects += (if(detect) 1 else -1)
+    }
+  }
 
-  def getSize: Int = (0 until k).map(x => adwins(x).getWidth).min
+  def getSize: Int = widths.minKey.toInt
 
-  def getSingleSize(index: Int): Int = adwins(index).getWidth
+  def getSingleSize(index: Int): Int = adwins.width(index)
 
-  def getIndexAndSize: (Int,Int) = (0 until k).map(x => (x,adwins(x).getWidth)).minBy(_._2)
+  def getIndexAndSize: (Int,Int) = (widths.min, widths.minKey.toInt)
 
-  def getIndexAndSizeFromArms(arms: Array[Int]): (Int,Int) = arms.map(x => (x,adwins(x).getWidth)).minBy(_._2)
+  def getIndexAndSizeFromArms(arms: Array[Int]): (Int,Int) = arms.map(x => (x,adwins.width(x))).minBy(_._2)
 
-  def getDetect: Boolean = (0 until k).exists(x => adwins(x).getDetect)
+  def getDetect: Boolean = ndetects > 0
 }
@@ -16,85 +16,26 @@
  */
 package com.edouardfouche.monitoring.scalingstrategies
 
+import com.edouardfouche.utils.KLUCB
+
 //
 /**
   * Scaling Strategy based on KL-UCB++
   * @param lmin the minimum number of pulls (in fact, typically 1)
   * @param lmax the maximum number of pulls (in fact, typically the number of arms)
   * @param delta the confidence threshold for scaling decisions
+  * @param fast whether to use the fast, approximate inversion of the KL-divergence (see KLUCB.upperFast)
   *
   * @note the difference with KLBasedScaling is that it is using scala.math.log(t/ counts(arm)) / counts(arm)
   */
-case class KLBasedScalingPlus(lmin: Int, lmax: Int, delta: Double) extends ScalingStrategy {
+case class KLBasedScalingPlus(lmin: Int, lmax: Int, delta: Double, fast: Boolean = false) extends KLScaling {
   val gamma = 0.0
-  val name=s"KLP-$lmin-$lmax-$delta"
+  val name: String = s"KLP-$lmin-$lmax-$delta" + (if(fast) "-fast" else "")
   var confidence=1.0
 
-  val d = scala.math.pow(10,-8)
-  val eps = scala.math.pow(10,-12)
-
-  val maxiter = 20
-
   var k = lmax
 
-  // calculate the kl-divergence
-  def kl(p: Double, q: Double): Double = {
-    p * scala.math.log(p/q) + (1-p)*scala.math.log((1-p)/(1-q))
-  }
-  // calculate the derivative kl-divergence
-  def dkl(p: Double , q: Double): Double = {
-    (q-p) / (q * (1.0 - q))
-  }
-
-  def scale(rewards: Array[Double], indexes: Array[Int], sums: Array[Double], counts: Array[Double], t:Double): Int = {
-    require(rewards.length == indexes.length)
-    require(sums.length == counts.length)
-    val Lt: Double = indexes.length.toDouble
-    val eta: Double = indexes.map(x => sums(x)/counts(x)).sum/Lt
-
-    // use Newton's method
-    def getKLUCBupper(arm: Int, t: Double): Double = {
-      val logndn = scala.math.log(t/ counts(arm)) / counts(arm)
-      val p: Double = (sums(arm)/counts(arm)).max(d)
-      if(p >= 1.0) return 1.0
-
-      var q = p + d
-      for(i <- 1 to maxiter) {
-        val f = logndn - kl(p,q)
-        val df = -dkl(p,q)
-        if(f*f < eps) return q // newton's method has converged
-        q = (1.0-d).min((q - f/df).max(p+d))
-      }
-      q
-    }
+  val exploration: (Double, Double) => Double = KLUCB.explorationPlus
 
-    if(eta <= delta) {
-      if(Lt <= lmin) {
-        k = Lt.toInt // Already min, can't scale down
-        k
-      } else {
-        k = (Lt - 1.0).toInt // Scale Down
-        k
-      }
-    } else {
-      if(Lt >= lmax) { // Already max, can't scale up
-        k = Lt.toInt
-        k
-      } else {
-        val klindices:Array[(Int,Double)] = sums.indices.map(x => if(t==0.0 | counts(x) == 0.0) (x,1.0) else (x,getKLUCBupper(x,t))).toArray
-        val sortedindices = klindices.sortBy(-_._2)
-        val b = sortedindices((Lt.toInt-1) + 1)._2
-        val Bt = (Lt / (Lt+1))*eta + (1/(Lt+1)) * b
-        confidence = Bt
-        if(Bt > delta) {
-          k = (Lt + 1.0).toInt
-          k
-        } // Scale Up
-        else {
-          k = Lt.toInt
-          k
-        } // Don't Scale
-      }
-    }
-  }
+  def fresh: ScalingStrategy = copy()
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.monitoring.scalingstrategies
+
+import com.edouardfouche.utils.{KLUCB, KLUCBIndex}
+
+/**
+  * General trait for the scaling strategies based on KL-UCB (see KLBasedScaling and KLBasedScalingPlus), which only
+  * differ by their exploration term
+  */
+trait KLScaling extends ScalingStrategy {
+  def fast: Boolean // whether to use the fast, approximate inversion of the KL-divergence (see KLUCB.upperFast)
+
+  // Exploration term, as a function of t and of the number of pulls of an arm (e.g., KLUCB.exploration)
+  def exploration: (Double, Double) => Double
+
+  // One cache of the KL-UCB indexes per bandit, i.e., per array of sums (the strategy may be shared between bandits)
+  val indexcaches: java.util.Map[Array[Double], KLUCBIndex] =
+    java.util.Collections.synchronizedMap(new java.util.WeakHashMap[Array[Double], KLUCBIndex]())
+
+  def indexcache(sums: Array[Double]): KLUCBIndex = indexcaches.synchronized {
+    var cache = indexcaches.get(sums)
+    if(cache == null) {
+      cache = new KLUCBIndex(sums.length, exploration, fast)
+      indexcaches.put(sums, cache)
+    }
+    cache
+  }
+
+  def scale(rewards: Array[Double], indexes: Array[Int], sums: Array[Double], counts: Array[Double], t:Double): Int = {
+    require(rewards.length == indexes.length)
+    require(sums.length == counts.length)
+    val Lt: Double = indexes.length.toDouble
+    val eta: Double = indexes.map(x => sums(x)/counts(x)).sum/Lt
+
+    if(eta <= delta) {
+      if(Lt <= lmin) {
+        k = Lt.toInt // Already min, can't scale down
+        k
+      } else {
+        k = (Lt - 1.0).toInt // Scale Down
+        k
+      }
+    } else {
+      if(Lt >= lmax) { // Already max, can't scale up
+        k = Lt.toInt
+        k
+      } else {
+        val cache = indexcache(sums)
+        val sortedindices = cache.largest(sums, counts, t, Lt.toInt + 1)
+        val b = cache(sums, counts, sortedindices((Lt.toInt-1) + 1), t)
+        val Bt = (Lt / (Lt+1))*eta + (1/(Lt+1)) * b
+        confidence = Bt
+        if(Bt > delta) {
+          k = (Lt + 1.0).toInt
+          k
+        } // Scale Up
+        else {
+          k = Lt.toInt
+          k
+        } // Don't Scale
+      }
+    }
+  }
+}
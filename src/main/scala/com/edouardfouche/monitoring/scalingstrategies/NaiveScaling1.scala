@@ -30,6 +30,8 @@ case class NaiveScaling1(lmin: Int, lmax: Int, gamma: Double, delta: Double) ext
   var confidence=1.0
   var k = lmax
 
+  def fresh: ScalingStrategy = copy()
+
   def scale(rewards: Array[Double], indexes: Array[Int], sums: Array[Double], counts: Array[Double], t:Double): Int = {
     require(rewards.length == indexes.length)
     require(sums.length == counts.length)
@@ -29,6 +29,8 @@ case class NaiveScaling2(lmin: Int, lmax: Int, delta: Double) extends ScalingStr
   val name=s"Naive2-$lmin-$lmax-$gamma-$delta"
   var confidence=1.0
   var k = lmax
+  def fresh: ScalingStrategy = copy()
+
   def scale(rewards: Array[Double], indexes: Array[Int], sums: Array[Double], counts: Array[Double], t:Double): Int = {
     require(rewards.length == indexes.length)
     require(sums.length == counts.length)
@@ -27,6 +27,9 @@ case class NoScaling(var k: Int) extends ScalingStrategy {
   val delta=0.0
   val gamma=0.0
   var confidence=0.0
+
+  def fresh: ScalingStrategy = copy()
+
   def scale(rewards: Array[Double], indexes: Array[Int], sums: Array[Double], counts: Array[Double], t:Double): Int = {
     k
   }
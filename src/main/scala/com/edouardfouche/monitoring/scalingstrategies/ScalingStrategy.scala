@@ -29,4 +29,7 @@ trait ScalingStrategy {
   val lmin: Int
   val lmax: Int
   def scale(rewards: Array[Double], indexes: Array[Int], sums: Array[Double], counts: Array[Double], t:Double): Int
+
+  // A new instance of this strategy, in its initial state (a strategy is mutable, e.g., k, so each run needs its own)
+  def fresh: ScalingStrategy
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.preprocess
+
+import java.nio.channels.FileChannel
+import java.nio.file.{Paths, StandardOpenOption}
+import java.nio.{ByteBuffer, ByteOrder, MappedByteBuffer}
+
+/**
+  * A compact binary format for (action) matrices, which can be memory-mapped instead of being parsed into the heap.
+  *
+  * Layout: a header of 24 bytes, followed by the values column by column (i.e., the values of column 0 for each row,
+  * then of column 1, ...), little-endian. The header is
+  * - the magic string "SMABCOLS" (8 bytes, ASCII),
+  * - the number of bytes per value (int32): 8 for doubles, 4 for floats,
+  * - the number of columns (int32),
+  * - the number of rows (int64).
+  */
+object BinaryMatrix {
+  val magic: String = "SMABCOLS"
+  val headersize: Int = 24
+  private[preprocess] val segmentsize: Long = 1L << 30 // files are mapped by segments, as a mapping cannot exceed 2GB
+
+  /**
+    * Write a matrix in the binary format
+    * @param path the location of the file
+    * @param data a row-oriented matrix
+    * @param float whether to store the values as floats (half the size) instead of doubles
+    */
+  def write(path: String, data: Array[Array[Double]], float: Boolean = false): Unit = {
+    require(data.nonEmpty, "Cannot write an empty matrix")
+    write(path, new ArrayRowReader(data), data.length, float)
+  }
+
+  /**
+    * Convert a data set to the binary format, reading it row by row (e.g., a large csv file)
+    * The data set is read twice: once to count the rows, once to write them.
+    * @param dataset the data set to convert, read with dataset.rows()
+    * @param path the location of the file
+    * @param float whether to store the values as floats (half the size) instead of doubles
+    */
+  def convert(dataset: DataRef, path: String, float: Boolean = false): Unit = {
+    val counter = dataset.rows()
+    val row = new Array[Double](counter.ncols)
+    var nrows = 0
+    while(counter.next(row)) nrows += 1
+    counter.close()
+    val reader = dataset.rows()
+    try write(path, reader, nrows, float) finally reader.close()
+  }
+
+  /**
+    * Write the rows of a reader in the binary format
+    * @param path the location of the file
+    * @param reader the rows to write
+    * @param nrows the number of rows to write
+    * @param float whether to store the values as floats (half the size) instead of doubles
+    */
+  def write(path: String, reader: RowReader, nrows: Int, float: Boolean): Unit = {
+    val ncols = reader.ncols
+    val valuesize = if(float) 4 else 8
+    val channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+      StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+    try {
+      val segments = map(channel, FileChannel.MapMode.READ_WRITE, headersize + nrows.toLong * ncols * valuesize)
+      val header = segments(0)
+      header.put(magic.getBytes("US-ASCII")).putInt(valuesize).putInt(ncols).putLong(nrows.toLong)
+
+      val row = new Array[Double](ncols)
+      var i = 0
+      while(i < nrows) {
+        if(!reader.next(row)) throw new Error(s"Expected $nrows rows, got $i")
+        var j = 0
+        while(j < ncols) {
+          val offset = headersize + (j.toLong * nrows + i) * valuesize
+          val segment = segments((offset / segmentsize).toInt)
+          val position = (offset % segmentsize).toInt
+          if(float) segment.putFloat(position, row(j).toFloat) else segment.putDouble(position, row(j))
+          j += 1
+        }
+        i += 1
+      }
+      segments.foreach(_.force())
+    } finally channel.close()
+  }
+
+  // Map a file of the given size, in segments of segmentsize bytes (the values never overlap two segments)
+  private[preprocess] def map(channel: FileChannel, mode: FileChannel.MapMode, size: Long): Array[MappedByteBuffer] = {
+    val nsegments = ((size + segmentsize - 1) / segmentsize).toInt
+    Array.tabulate(nsegments) { s =>
+      val start = s * segmentsize
+      channel.map(mode, start, (size - start).min(segmentsize)).order(ByteOrder.LITTLE_ENDIAN).asInstanceOf[MappedByteBuffer]
+    }
+  }
+}
+
+/**
+  * A matrix in the binary format (see BinaryMatrix), memory-mapped in read-only mode: the values are read straight
+  * from the page cache, so opening it is near-instant and takes no heap, whatever the size of the matrix.
+  * @param path the location of the file
+  * @note The reads are thread-safe, i.e., several simulators may share the same matrix.
+  */
+class MappedMatrix(val path: String) {
+  private val (segments, valuesize, header) = {
+    val channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)
+    try {
+      val header = ByteBuffer.allocate(BinaryMatrix.headersize).order(ByteOrder.LITTLE_ENDIAN)
+      while(header.hasRemaining && channel.read(header, header.position()) >= 0) {}
+      header.flip()
+      val bytes = new Array[Byte](8)
+      header.get(bytes)
+      if(header.limit() < BinaryMatrix.headersize || new String(bytes, "US-ASCII") != BinaryMatrix.magic)
+        throw new Error(s"$path is not a binary matrix")
+      val valuesize = header.getInt()
+      if(valuesize != 4 && valuesize != 8) throw new Error(s"Unknown value size in $path: $valuesize")
+      (BinaryMatrix.map(channel, FileChannel.MapMode.READ_ONLY, channel.size()), valuesize, header)
+    } finally channel.close() // the mapping stays valid after closing the channel
+  }
+  val ncols: Int = header.getInt()
+  val nrows: Int = {
+    val n = header.getLong()
+    if(n > Int.MaxValue) throw new Error(s"Too many rows in $path: $n")
+    n.toInt
+  }
+  if(segments.map(_.capacity().toLong).sum < BinaryMatrix.headersize + nrows.toLong * ncols * valuesize)
+    throw new Error(s"$path is truncated")
+
+  /**
+    * Read a value
+    * @param row the index of the row
+    * @param col the index of the column
+    * @return the value at row, col
+    */
+  def apply(row: Int, col: Int): Double = {
+    val offset = BinaryMatrix.headersize + (col.toLong * nrows + row) * valuesize
+    val segment = segments((offset / BinaryMatrix.segmentsize).toInt)
+    val position = (offset % BinaryMatrix.segmentsize).toInt
+    if(valuesize == 8) segment.getDouble(position) else segment.getFloat(position)
+  }
+
+  /**
+    * Read a whole column
+    * @param col the index of the column
+    * @return the values of the column, for each row
+    */
+  def column(col: Int): Array[Double] = Array.tabulate(nrows)(apply(_, col))
+}
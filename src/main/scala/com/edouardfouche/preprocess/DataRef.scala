@@ -16,6 +16,9 @@
  */
 package com.edouardfouche.preprocess
 
+import java.io.{BufferedInputStream, FileInputStream}
+import java.security.MessageDigest
+
 trait DataRef {
   val id: String
   val category: String
@@ -25,4 +28,63 @@ trait DataRef {
     * @return A 2-D Array of Double containing the values from the csv. (row oriented)
     */
   def open(): Array[Array[Double]]
+
+  /**
+    * Read the data ref row by row, instead of opening it as a whole (by default, it is opened as a whole)
+    * @return A reader of the rows, which should be closed after use
+    */
+  def rows(): RowReader = new ArrayRowReader(open())
+
+  /**
+    * A fingerprint of the content of the data ref, to identify what was computed from it (see PersistentCache)
+    * By default, a hash of its values, read row by row.
+    * @return the fingerprint, or None if the content may change (e.g., live input)
+    */
+  def fingerprint: Option[String] = {
+    val reader = rows()
+    try Some(DataRef.hashRows(reader)) finally reader.close()
+  }
+}
+
+object DataRef {
+  private def hex(digest: MessageDigest): String = digest.digest().take(8).map("%02x".format(_)).mkString
+
+  /**
+    * Hash the content of a file, with some parameters (e.g., how it is parsed)
+    * @param path the location of the file
+    * @param parameters the parameters to hash with the content
+    * @return the first 16 hexadecimal digits of the SHA-256 of the parameters and of the content
+    */
+  def hashFile(path: String, parameters: String): String = {
+    val digest = MessageDigest.getInstance("SHA-256")
+    digest.update(parameters.getBytes("UTF-8"))
+    val input = new BufferedInputStream(new FileInputStream(path))
+    try {
+      val buffer = new Array[Byte](1 << 16)
+      var n = input.read(buffer)
+      while(n >= 0) {
+        digest.update(buffer, 0, n)
+        n = input.read(buffer)
+      }
+    } finally input.close()
+    hex(digest)
+  }
+
+  /**
+    * Hash the values of the rows of a reader
+    * @param reader the rows to hash (read until the end)
+    * @return the first 16 hexadecimal digits of the SHA-256 of the values
+    */
+  def hashRows(reader: RowReader): String = {
+    val digest = MessageDigest.getInstance("SHA-256")
+    val row = new Array[Double](reader.ncols)
+    val bytes = java.nio.ByteBuffer.allocate(8 * reader.ncols)
+    digest.update(bytes.putInt(0, reader.ncols).array(), 0, 4)
+    while(reader.next(row)) {
+      bytes.clear()
+      bytes.asDoubleBuffer().put(row)
+      digest.update(bytes.array())
+    }
+    hex(digest)
+  }
 }
\ No newline at end of file
@@ -37,4 +37,15 @@ case class ExternalDataRef(id: String, path: String, header: Int, separator: Str
       case e: Exception => println(s"Exception caught open $path" + e); null
     }
   }
-}
\ No newline at end of file
+
+  /**
+    * Read the data ref row by row. Only csv files are read incrementally, other formats are opened as a whole.
+    * @return A reader of the rows, which should be closed after use
+    */
+  override def rows(): RowReader = {
+    if(path.endsWith("csv")) CSVRowReader(path, header, separator, excludeIndex, dropClass = true)
+    else super.rows()
+  }
+
+  override def fingerprint: Option[String] = Some(DataRef.hashFile(path, s"$header $separator $excludeIndex"))
+}
@@ -62,4 +62,6 @@ case class ExternalDataRefResample(id: String, path: String, header: Int, separa
       case e: Exception => println(s"Exception caught open $path" + e); null
     }
   }
-}
\ No newline at end of file
+
+  override def fingerprint: Option[String] = Some(DataRef.hashFile(path, s"$header $separator $nDim $n"))
+}
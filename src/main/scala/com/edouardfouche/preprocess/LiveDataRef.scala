@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.preprocess
+
+import java.io.InputStream
+
+/**
+  * Reference to a live, possibly unbounded, data set in csv format, e.g., the standard input or a socket.
+  * It can only be read incrementally, with a StreamingSimulator.
+  * @param id name to give to this data set
+  * @param input opens the input (again, when the simulator is reset)
+  * @param header number of header lines (will be deleted)
+  * @param separator character used to separate each value
+  * @param excludeIndex Whether to exclude an index (the first column) or not.
+  * @param category "category" to which this data set belongs (free text)
+  */
+case class LiveDataRef(id: String, input: () => InputStream, header: Int, separator: String, excludeIndex: Boolean, category: String) extends DataRef {
+  def open(): Array[Array[Double]] = throw new Error(s"The live data set $id cannot be opened as a whole, read its rows instead")
+
+  override def rows(): RowReader = CSVRowReader(input(), header, separator, excludeIndex, dropClass = true)
+
+  override def fingerprint: Option[String] = None
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.preprocess
+
+/**
+  * Reference to a matrix in the binary format (see BinaryMatrix), e.g., a pre-computed action matrix.
+  * The file is memory-mapped: a CachedStreamSimulator reads only the cells it needs, instead of opening the data set.
+  *
+  * Like ExternalDataRefResample, the matrix can be resampled to nDim dimensions and n rows: if it has more, we take the
+  * first ones, otherwise we duplicate them. This is done on the fly, without copying anything.
+  *
+  * @param id name to give to this data set
+  * @param path location in the system
+  * @param category "category" to which this data set belongs (free text)
+  * @param nDim target number of dimensions (0 to keep the number of columns of the matrix)
+  * @param n target number of rows (0 to keep the number of rows of the matrix)
+  */
+case class MatrixDataRef(id: String, path: String, category: String, nDim: Int = 0, n: Int = 0) extends DataRef {
+  require(nDim >= 0 && n >= 0)
+
+  lazy val matrix: MappedMatrix = new MappedMatrix(path)
+  lazy val ncols: Int = if(nDim == 0) matrix.ncols else nDim
+  lazy val nrows: Int = if(n == 0) matrix.nrows else n
+
+  /**
+    * Read a value of the (resampled) matrix
+    * @param row the index of the row
+    * @param col the index of the column
+    * @return the value at row, col
+    */
+  def get(row: Int, col: Int): Double = matrix(row % matrix.nrows, col % matrix.ncols)
+
+  /**
+    * Open the data ref (this copies the whole matrix into the heap)
+    * @return A 2-D Array of Double containing the values of the matrix. (row oriented)
+    */
+  def open(): Array[Array[Double]] = Array.tabulate(nrows, ncols)(get)
+
+  override def rows(): RowReader = new RowReader {
+    val ncols: Int = MatrixDataRef.this.ncols
+    private var position = 0
+
+    def next(row: Array[Double]): Boolean = {
+      if(position >= nrows) false
+      else {
+        var j = 0
+        while(j < ncols) {
+          row(j) = get(position, j)
+          j += 1
+        }
+        position += 1
+        true
+      }
+    }
+
+    def close(): Unit = {}
+  }
+
+  override def fingerprint: Option[String] = Some(DataRef.hashFile(path, s"$nDim $n"))
+}
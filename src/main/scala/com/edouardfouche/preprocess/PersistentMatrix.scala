@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.preprocess
+
+import java.io.RandomAccessFile
+import java.nio.channels.FileChannel
+import java.nio.file.{Files, Paths, StandardOpenOption}
+import java.nio.{ByteBuffer, ByteOrder, MappedByteBuffer}
+
+/**
+  * A matrix in the binary format (see BinaryMatrix), filled progressively, e.g., an action matrix computed on demand
+  * and kept across runs. Once complete, it can be read like any binary matrix, e.g., with a MatrixDataRef.
+  *
+  * A second file (path + ".done") holds one byte per value, row by row: 1 if the value was written. Both files are
+  * created empty (i.e., sparse) if they do not exist, under a file lock, and memory-mapped in read-write mode, so that
+  * several simulators, possibly in different JVMs, can fill the same matrix. The values are expected to be
+  * deterministic, i.e., concurrent writers of a value write the same one.
+  *
+  * @param path the location of the matrix
+  * @param nrows the number of rows
+  * @param ncols the number of columns
+  * @note Use PersistentMatrix.open, so that a JVM has a single instance per file (the accesses synchronize on it).
+  */
+class PersistentMatrix private (val path: String, val nrows: Int, val ncols: Int) {
+  val donepath: String = path + ".done"
+  private val size: Long = BinaryMatrix.headersize + nrows.toLong * ncols * 8
+
+  private val (segments, flags) = {
+    val lock = FileChannel.open(Paths.get(path + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE)
+    try {
+      val filelock = lock.lock() // against other JVMs (within this one, PersistentMatrix.open is synchronized)
+      try {
+        if(!Files.exists(Paths.get(path))) create()
+        val channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ, StandardOpenOption.WRITE)
+        val donechannel = FileChannel.open(Paths.get(donepath), StandardOpenOption.READ, StandardOpenOption.WRITE)
+        try {
+          if(channel.size() != size || donechannel.size() != nrows.toLong * ncols)
+            throw new Error(s"$path does not hold a matrix of $nrows x $ncols doubles")
+          (BinaryMatrix.map(channel, FileChannel.MapMode.READ_WRITE, size),
+            BinaryMatrix.map(donechannel, FileChannel.MapMode.READ_WRITE, nrows.toLong * ncols))
+        } finally {
+          channel.close() // the mappings stay valid after closing the channels
+          donechannel.close()
+        }
+      } finally filelock.release()
+    } finally lock.close()
+  }
+
+  // Create the (sparse) files: the flags first, so that a matrix file never exists without its flags
+  private def create(): Unit = {
+    val done = new RandomAccessFile(donepath, "rw")
+    try done.setLength(nrows.toLong * ncols) finally done.close()
+    val temporary = Paths.get(path + ".tmp")
+    val file = new RandomAccessFile(temporary.toFile, "rw")
+    try {
+      file.setLength(size)
+      val header = ByteBuffer.allocate(BinaryMatrix.headersize).order(ByteOrder.LITTLE_ENDIAN)
+      header.put(BinaryMatrix.magic.getBytes("US-ASCII")).putInt(8).putInt(ncols).putLong(nrows.toLong)
+      header.flip()
+      file.getChannel.write(header, 0)
+    } finally file.close()
+    Files.move(temporary, Paths.get(path), java.nio.file.StandardCopyOption.ATOMIC_MOVE)
+  }
+
+  private def segment(buffers: Array[MappedByteBuffer], offset: Long): MappedByteBuffer =
+    buffers((offset / BinaryMatrix.segmentsize).toInt)
+
+  /**
+    * Read some values of a row
+    * @param row the index of the row
+    * @param cols the indexes of the columns
+    * @param values the array in which to write the values, at the position of their column in cols
+    * @return the positions (in cols) of the values that were not written yet
+    */
+  def read(row: Int, cols: Array[Int], values: Array[Double]): Array[Int] = synchronized {
+    val missing = Array.newBuilder[Int]
+    var i = 0
+    while(i < cols.length) {
+      val flag = row.toLong * ncols + cols(i)
+      if(segment(flags, flag).get((flag % BinaryMatrix.segmentsize).toInt) == 0) missing += i
+      else {
+        val offset = BinaryMatrix.headersize + (cols(i).toLong * nrows + row) * 8
+        values(i) = segment(segments, offset).getDouble((offset % BinaryMatrix.segmentsize).toInt)
+      }
+      i += 1
+    }
+    missing.result()
+  }
+
+  /**
+    * Write some values of a row
+    * @param row the index of the row
+    * @param cols the indexes of the columns
+    * @param values the value for each column in cols
+    */
+  def write(row: Int, cols: Array[Int], values: Array[Double]): Unit = synchronized {
+    var i = 0
+    while(i < cols.length) {
+      val offset = BinaryMatrix.headersize + (cols(i).toLong * nrows + row) * 8
+      segment(segments, offset).putDouble((offset % BinaryMatrix.segmentsize).toInt, values(i))
+      i += 1
+    }
+    i = 0
+    while(i < cols.length) { // the flags after the values
+      val flag = row.toLong * ncols + cols(i)
+      segment(flags, flag).put((flag % BinaryMatrix.segmentsize).toInt, 1.toByte)
+      i += 1
+    }
+  }
+
+  /**
+    * Whether every value was written
+    */
+  def complete: Boolean = synchronized(PersistentMatrix.complete(flags))
+
+  /**
+    * Write the changes to the storage device
+    */
+  def force(): Unit = synchronized {
+    segments.foreach(_.force())
+    flags.foreach(_.force())
+  }
+}
+
+object PersistentMatrix {
+  private val instances = scala.collection.mutable.HashMap[String, PersistentMatrix]()
+
+  /**
+    * Open a persistent matrix, or create it if it does not exist
+    * @param path the location of the matrix
+    * @param nrows the number of rows
+    * @param ncols the number of columns
+    * @return the matrix (the same instance for the same path, in a JVM)
+    */
+  def open(path: String, nrows: Int, ncols: Int): PersistentMatrix = synchronized {
+    val key = Paths.get(path).toAbsolutePath.normalize.toString
+    val matrix = instances.getOrElseUpdate(key, new PersistentMatrix(key, nrows, ncols))
+    if(matrix.nrows != nrows || matrix.ncols != ncols)
+      throw new Error(s"$path does not hold a matrix of $nrows x $ncols doubles")
+    matrix
+  }
+
+  /**
+    * Whether a persistent matrix exists and is complete, without creating it
+    * @param path the location of the matrix
+    */
+  def complete(path: String): Boolean = {
+    if(!Files.exists(Paths.get(path)) || !Files.exists(Paths.get(path + ".done"))) false
+    else {
+      val channel = FileChannel.open(Paths.get(path + ".done"), StandardOpenOption.READ)
+      try complete(BinaryMatrix.map(channel, FileChannel.MapMode.READ_ONLY, channel.size()))
+      finally channel.close()
+    }
+  }
+
+  private def complete(flags: Array[MappedByteBuffer]): Boolean = flags.forall { buffer =>
+    var position = 0
+    while(position + 8 <= buffer.limit() && buffer.getLong(position) == 0x0101010101010101L) position += 8
+    while(position < buffer.limit() && buffer.get(position) == 1) position += 1
+    position == buffer.limit()
+  }
+}
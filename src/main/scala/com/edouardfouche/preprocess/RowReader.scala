@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.preprocess
+
+import java.io.{BufferedReader, FileReader, InputStream, InputStreamReader}
+
+/**
+  * Incremental reader of the rows of a data set, i.e., one row at a time, without loading the whole data set.
+  * This is what allows to simulate a stream from data that does not fit in memory, or that is not complete yet.
+  */
+trait RowReader {
+  val ncols: Int // number of values in each row
+
+  /**
+    * Read the next row
+    * @param row the array in which to write the values of the row, of length ncols
+    * @return false if there is no row left (the values of row are then undefined), true otherwise
+    */
+  def next(row: Array[Double]): Boolean
+
+  def close(): Unit
+}
+
+/**
+  * Read the rows of an in-memory data set
+  * @param data a row-oriented data set
+  */
+class ArrayRowReader(data: Array[Array[Double]]) extends RowReader {
+  val ncols: Int = data(0).length
+  private var position = 0
+
+  def next(row: Array[Double]): Boolean = {
+    if(position >= data.length) false
+    else {
+      System.arraycopy(data(position), 0, row, 0, ncols)
+      position += 1
+      true
+    }
+  }
+
+  def close(): Unit = {}
+}
+
+/**
+  * Read the rows of a csv file, or of any (possibly unbounded) character stream in csv format, line by line.
+  * The rows are parsed the same way as Preprocess.openCSV, but without materializing the data set: empty lines are
+  * skipped, then the header, and the last column is dropped if the first line contains "class" (with dropClass and
+  * exactly one header line). Only numerical values are handled.
+  *
+  * @param reader the source of the lines. Reading blocks until the next line is available, e.g., for live input.
+  * @param header number of header lines (will be skipped)
+  * @param separator character used to separate each value
+  * @param excludeIndex Whether to exclude an index (the first column) or not.
+  * @param dropClass Whether to drop the "class" column if there is one. (assumes it is the last one)
+  */
+class CSVRowReader(reader: BufferedReader, header: Int = 1, separator: String = ",", excludeIndex: Boolean = false,
+                   dropClass: Boolean = true) extends RowReader {
+  require(header >= 0, "header cannot be a negative number")
+  require(separator.length == 1, "separator cannot be longer than 1")
+  private val sep = separator.charAt(0)
+
+  // The header, and the first row (read ahead, to know the number of columns)
+  private var first: String = nextLine()
+  private val dropLast: Boolean = dropClass & header == 1 & first != null && first.split(" ").exists(_ contains "class")
+  for(_ <- 0 until header) first = nextLine()
+  if(first == null) throw new Error("No data after the header")
+
+  private val start = if(excludeIndex) 1 else 0 // index of the first kept field
+  val ncols: Int = countFields(first) - start - (if(dropLast) 1 else 0)
+  require(ncols > 0, "No column to read")
+
+  def next(row: Array[Double]): Boolean = {
+    val line = if(first != null) { val l = first; first = null; l } else nextLine()
+    if(line == null) false
+    else {
+      parse(line, row)
+      true
+    }
+  }
+
+  def close(): Unit = reader.close()
+
+  private def nextLine(): String = {
+    var line = reader.readLine()
+    while(line != null && line.isEmpty) line = reader.readLine()
+    line
+  }
+
+  private def countFields(line: String): Int = {
+    var n = 1
+    var i = 0
+    while(i < line.length) {
+      if(line.charAt(i) == sep) n += 1
+      i += 1
+    }
+    n
+  }
+
+  // Parse the fields of a line, from left to right, without splitting it first
+  private def parse(line: String, row: Array[Double]): Unit = {
+    var field = 0
+    var from = 0
+    while(field < start + ncols) {
+      var to = line.indexOf(sep, from)
+      if(to < 0) to = line.length
+      if(from > line.length) throw new Error(s"Expected ${start + ncols} values, got $field in line: $line")
+      if(field >= start) row(field - start) = java.lang.Double.parseDouble(line.substring(from, to).trim)
+      from = to + 1
+      field += 1
+    }
+  }
+}
+
+object CSVRowReader {
+  def apply(path: String, header: Int, separator: String, excludeIndex: Boolean, dropClass: Boolean): CSVRowReader =
+    new CSVRowReader(new BufferedReader(new FileReader(path), 1 << 16), header, separator, excludeIndex, dropClass)
+
+  def apply(input: InputStream, header: Int, separator: String, excludeIndex: Boolean, dropClass: Boolean): CSVRowReader =
+    new CSVRowReader(new BufferedReader(new InputStreamReader(input), 1 << 16), header, separator, excludeIndex, dropClass)
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.streamsimulator
+
+import java.nio.channels.FileChannel
+import java.nio.file.{Files, Path, Paths, StandardOpenOption}
+import java.nio.{ByteBuffer, ByteOrder}
+
+/**
+  * Options of an ActionCache
+  * @param chunkSize the number of (consecutive) pairs of a window in a chunk, i.e., computed together
+  * @param maxCells the number of values to keep in memory, at most (rounded to whole chunks, at least one)
+  * @param spill a directory in which to spill the chunks evicted from memory. If None, they are dropped and computed
+  *              again if they are needed again (the actions are deterministic).
+  * @param directory a directory for a persistent cache of the results, kept across runs (see PersistentCache)
+  */
+case class CacheOptions(chunkSize: Int = 1024, maxCells: Long = 1L << 24, spill: Option[String] = None,
+                        directory: Option[String] = None) {
+  require(chunkSize >= 1 && maxCells >= 1, "chunkSize and maxCells must be positive")
+}
+
+/**
+  * A store of the results of an action on each pair of each window of a stream, populated lazily and bounded in size.
+  *
+  * The (window x pair) matrix is divided in chunks of consecutive pairs of a window. A chunk is computed on its first
+  * access, so the parts of the matrix that are never accessed are never computed. The chunks are kept in memory up to
+  * options.maxCells values; beyond, the least recently used chunk is evicted: dropped, or written to a spill file (once,
+  * as its values never change) from which it is read back on its next access.
+  *
+  * @param nbatches the number of windows
+  * @param npairs the number of pairs
+  * @param compute compute the action in a window (given by its index), on some pairs (given by their indexes)
+  * @param options the size of the chunks, the bound and the spilling (see CacheOptions)
+  * @note The accesses are synchronized, a chunk is computed while holding the lock (compute can be parallel itself).
+  */
+class ActionCache(val nbatches: Int, val npairs: Int, compute: (Int, Array[Int]) => Array[Double],
+                  val options: CacheOptions = CacheOptions()) {
+  val chunkSize: Int = options.chunkSize
+  val nchunks: Int = (npairs + chunkSize - 1) / chunkSize // number of chunks per window
+  val maxChunks: Long = math.max(1L, options.maxCells / chunkSize)
+
+  // The chunks in memory, by key (window * nchunks + chunk), in access order (the least recently used first)
+  private val chunks = new java.util.LinkedHashMap[Long, Array[Double]](16, 0.75f, true) {
+    override def removeEldestEntry(eldest: java.util.Map.Entry[Long, Array[Double]]): Boolean = {
+      if(size > maxChunks) {
+        spill(eldest.getKey, eldest.getValue)
+        true
+      } else false
+    }
+  }
+
+  // The chunks on disk, by key, and their offset in the spill file
+  private val spilled = scala.collection.mutable.HashMap[Long, Long]()
+  private var spillsize: Long = 0L
+  private lazy val spillpath: Path = {
+    val directory = Paths.get(options.spill.get)
+    Files.createDirectories(directory)
+    val path = Files.createTempFile(directory, "actioncache", ".bin")
+    path.toFile.deleteOnExit()
+    path
+  }
+  private var channel: FileChannel = _ // opened on the first spill
+  private def spillchannel: FileChannel = {
+    if(channel == null) channel = FileChannel.open(spillpath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+      StandardOpenOption.WRITE)
+    channel
+  }
+
+  var ncomputed: Long = 0L // number of chunks computed so far (a chunk may be computed again if it was dropped)
+
+  /**
+    * Get the result of the action on a pair, in a window
+    * @param window the index of the window
+    * @param pair the index of the pair
+    * @return the result of the action
+    */
+  def apply(window: Int, pair: Int): Double = chunk(window, pair / chunkSize)(pair % chunkSize)
+
+  /**
+    * Get the result of the action on every pair of a window
+    * @param window the index of the window
+    * @return the result of the action on each pair (a new array)
+    */
+  def row(window: Int): Array[Double] = {
+    val values = new Array[Double](npairs)
+    var c = 0
+    while(c < nchunks) {
+      val chunkvalues = chunk(window, c)
+      System.arraycopy(chunkvalues, 0, values, c * chunkSize, chunkvalues.length)
+      c += 1
+    }
+    values
+  }
+
+  // Get a chunk, from memory, from the spill file, or by computing it
+  private def chunk(window: Int, c: Int): Array[Double] = synchronized {
+    require(window >= 0 && window < nbatches, s"window $window out of bounds")
+    val key = window.toLong * nchunks + c
+    var values = chunks.get(key)
+    if(values == null) {
+      val from = c * chunkSize
+      val length = math.min(chunkSize, npairs - from)
+      values = spilled.get(key) match {
+        case Some(offset) => read(offset, length)
+        case None =>
+          ncomputed += 1
+          compute(window, Array.tabulate(length)(from + _))
+      }
+      chunks.put(key, values)
+    }
+    values
+  }
+
+  private def spill(key: Long, values: Array[Double]): Unit = {
+    if(options.spill.isDefined && !spilled.contains(key)) {
+      val buffer = ByteBuffer.allocate(values.length * 8).order(ByteOrder.LITTLE_ENDIAN)
+      buffer.asDoubleBuffer().put(values)
+      var position = spillsize
+      while(buffer.hasRemaining) position += spillchannel.write(buffer, position)
+      spilled(key) = spillsize
+      spillsize = position
+    }
+  }
+
+  private def read(offset: Long, length: Int): Array[Double] = {
+    val buffer = ByteBuffer.allocate(length * 8).order(ByteOrder.LITTLE_ENDIAN)
+    var position = offset
+    while(buffer.hasRemaining) {
+      val n = spillchannel.read(buffer, position)
+      if(n < 0) throw new Error(s"The spill file $spillpath is truncated")
+      position += n
+    }
+    buffer.flip()
+    val values = new Array[Double](length)
+    buffer.asDoubleBuffer().get(values)
+    values
+  }
+
+  /**
+    * Drop every chunk, in memory and on disk
+    */
+  def clear(): Unit = synchronized {
+    chunks.clear()
+    if(spilled.nonEmpty) spillchannel.truncate(0L)
+    spilled.clear()
+    spillsize = 0L
+  }
+
+  /**
+    * Drop every chunk, and close and delete the spill file, when the cache is discarded
+    * The cache can still be used afterwards (a new spill file is then created if needed).
+    */
+  def close(): Unit = synchronized {
+    clear()
+    if(channel != null) {
+      channel.close()
+      channel = null
+      Files.deleteIfExists(spillpath)
+    }
+  }
+}
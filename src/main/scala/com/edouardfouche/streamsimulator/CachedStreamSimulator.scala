@@ -16,7 +16,7 @@
  */
 package com.edouardfouche.streamsimulator
 
-import com.edouardfouche.preprocess.DataRef
+import com.edouardfouche.preprocess.{DataRef, MatrixDataRef}
 
 /*
 The purpose of this class is to simulate a stream from a static dataset, based on a sliding window
@@ -28,18 +28,25 @@ The assumption is that the DataRef (dataset) points to a pre-computed stream.
   * In opposition to the "StreamSimulator", it does NOT compute the action.
   * The assumption is that the DataRef (dataset) points to a pre-computed stream.
   * @param dataset a reference to a data set, which actually is the corresponding action matrix
+  *
+  * @note If the dataset is a MatrixDataRef, it is not opened: the actions are read from the memory-mapped matrix.
   */
 case class CachedStreamSimulator(dataset: DataRef) extends Simulator {
   require(dataset.category == "cache")
 
-  val data = dataset.open() // in CachedStreamSimulator, the dataset is the cache
+  private val matrix: Option[MatrixDataRef] = dataset match {
+    case m: MatrixDataRef => Some(m)
+    case _ => None
+  }
+
+  lazy val data = dataset.open() // in CachedStreamSimulator, the dataset is the cache
   val id = dataset.id
-  val nbatches: Int = data.length
-  val npairs: Int = data(0).length
+  val nbatches: Int = matrix.map(_.nrows).getOrElse(data.length)
+  val npairs: Int = matrix.map(_.ncols).getOrElse(data(0).length)
 
   // Note: The assumption is that the number of columns in the given data set corresponds to the number of combination
   // in a matrix, i.e., that there exists a n such that n(n-1)/2 = data(0) (number of dimensions/pairs)
-  val ncols: Int = ((1.0/2.0)*(scala.math.sqrt(8.0*data(0).length+1.0)+1.0)).toInt // this gives back the number of cols from the number of pairs
+  val ncols: Int = ((1.0/2.0)*(scala.math.sqrt(8.0*npairs+1.0)+1.0)).toInt // this gives back the number of cols from the number of pairs
 
   val pairs: Array[(Int, Int)] = (0 until npairs).map(x => (x,x)).toArray // obviously, this one is not so relevant.
 
@@ -50,11 +57,19 @@ case class CachedStreamSimulator(dataset: DataRef) extends Simulator {
   // The cache holds the result of the computation of the whole stream, in that case, it actually just the data
   lazy val cache: Array[Array[Double]] = data
 
+  override def cachedRow(window: Int): Array[Double] = matrix match {
+    case Some(m) => Array.tabulate(npairs)(m.get(window, _))
+    case None => data(window)
+  }
+
   // Returns the precomputed actions in the next window.
   def next: Array[Array[Double]] = {
     if (state > nbatches-1) Array[Array[Double]]()
     else {
-      val window = Array(data(state))
+      val window = matrix match {
+        case Some(m) => Array(Array.tabulate(npairs)(m.get(state, _)))
+        case None => Array(data(state))
+      }
       state += 1
       window
     }
@@ -63,9 +78,50 @@ case class CachedStreamSimulator(dataset: DataRef) extends Simulator {
   def nextAndCompute(indexes: Array[Int]): Array[Double] = {
     if (state > nbatches-1) Array[Double]()
     else {
-      val actions = indexes.map(x => data(state)(x))
+      val actions = matrix match {
+        case Some(m) => indexes.map(x => m.get(state, x))
+        case None => indexes.map(x => data(state)(x))
+      }
       state += 1
       actions
     }
   }
+
+  // The windows are the rows of the cache: contiguous pairs (e.g., every pair) are copied by slices from each row.
+  // For a memory-mapped matrix, the rows of a column are contiguous, so the windows are read column by column.
+  override def nextBatchAndCompute(rounds: Int, indexes: Array[Int], buffer: Array[Double]): Int = {
+    require(buffer.length >= rounds.toLong * indexes.length, "The buffer is too small")
+    val n = rounds.min(nbatches - state).max(0)
+    val width = indexes.length
+    matrix match {
+      case Some(m) =>
+        var i = 0
+        while(i < width) {
+          var r = 0
+          while(r < n) {
+            buffer(r*width + i) = m.get(state + r, indexes(i))
+            r += 1
+          }
+          i += 1
+        }
+      case None =>
+        val contiguous = (0 until width).forall(i => indexes(i) == indexes(0) + i)
+        var r = 0
+        while(r < n) {
+          val row = data(state + r)
+          if(contiguous) {
+            if(width > 0) System.arraycopy(row, indexes(0), buffer, r*width, width)
+          } else {
+            var i = 0
+            while(i < width) {
+              buffer(r*width + i) = row(indexes(i))
+              i += 1
+            }
+          }
+          r += 1
+        }
+    }
+    state += n
+    n
+  }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.streamsimulator
+
+import java.util.concurrent.{ForkJoinPool, ForkJoinTask, RecursiveAction}
+
+/**
+  * Evaluate the pairs of a round, either sequentially or in parallel, on a ForkJoinPool.
+  * The work is split recursively into chunks of about the same estimated cost (a few chunks per thread, so that the
+  * threads that finish first can steal the remaining ones). Each result is written at the position of its pair, so the
+  * results do not depend on the scheduling, as long as the evaluation of each pair is deterministic.
+  * The evaluators with the same parallelism share the same pool (see PairEvaluator.pool), so that the simulators
+  * created for each run and each repetition do not pile up threads, and do not need to release them.
+  *
+  * @param parallelism the number of threads (1 for a sequential evaluation, in the calling thread)
+  */
+class PairEvaluator(val parallelism: Int) {
+  require(parallelism >= 1, "parallelism must be at least 1")
+  val chunksPerThread = 8
+
+  private lazy val pool = PairEvaluator.pool(parallelism)
+
+  /**
+    * Compute f on each element of [0, n)
+    * @param n the number of elements
+    * @param cost the estimated cost of each element
+    * @param f the function to compute
+    * @return the result of f on each element, in order
+    */
+  def map(n: Int, cost: Int => Double = _ => 1.0)(f: Int => Double): Array[Double] = {
+    val results = new Array[Double](n)
+    foreach(n, cost)(i => results(i) = f(i))
+    results
+  }
+
+  /**
+    * Run f on each element of [0, n)
+    * @param n the number of elements
+    * @param cost the estimated cost of each element
+    * @param f the function to run
+    */
+  def foreach(n: Int, cost: Int => Double = _ => 1.0)(f: Int => Unit): Unit = {
+    if(parallelism == 1 || n <= 1) {
+      var i = 0
+      while(i < n) {
+        f(i)
+        i += 1
+      }
+    } else {
+      val cumulated = new Array[Double](n + 1) // cumulated(i) is the cost of the elements before i
+      var i = 0
+      while(i < n) {
+        cumulated(i + 1) = cumulated(i) + cost(i)
+        i += 1
+      }
+      val grain = cumulated(n) / (parallelism * chunksPerThread)
+      pool.invoke(new Chunk(0, n, cumulated, grain, f))
+    }
+  }
+
+  // A range of elements, split at its middle cost as long as it costs more than the grain
+  private class Chunk(from: Int, to: Int, cumulated: Array[Double], grain: Double, f: Int => Unit)
+    extends RecursiveAction {
+    def compute(): Unit = {
+      if(to - from <= 1 || cumulated(to) - cumulated(from) <= grain) {
+        var i = from
+        while(i < to) {
+          f(i)
+          i += 1
+        }
+      } else {
+        val middle = (cumulated(from) + cumulated(to)) / 2
+        var split = java.util.Arrays.binarySearch(cumulated, from + 1, to, middle)
+        if(split < 0) split = -split - 1 // the insertion point
+        split = math.min(math.max(split, from + 1), to - 1)
+        ForkJoinTask.invokeAll(new Chunk(from, split, cumulated, grain, f), new Chunk(split, to, cumulated, grain, f))
+      }
+    }
+  }
+}
+
+object PairEvaluator {
+  private val pools = new java.util.concurrent.ConcurrentHashMap[Int, ForkJoinPool]()
+
+  /**
+    * @param parallelism the number of threads
+    * @return the pool of this JVM with this parallelism, created on first use (its threads are daemon threads, which
+    *         stop after some idle time)
+    */
+  def pool(parallelism: Int): ForkJoinPool = pools.computeIfAbsent(parallelism, p => new ForkJoinPool(p))
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.streamsimulator
+
+import com.edouardfouche.monitoring.actions.Action
+import com.edouardfouche.preprocess.{DataRef, MatrixDataRef, PersistentMatrix}
+
+/**
+  * A persistent cache of action matrices, in a directory shared across runs and experiments (and JVMs).
+  * The matrix of a StreamSimulator is identified by its id (data set, action, window size and step size) and by the
+  * fingerprint of the data set, so that it is not reused if the data changes. It is filled as the results are computed
+  * (see PersistentMatrix); once complete, it can be read with a CachedStreamSimulator, without opening the data set.
+  *
+  * @param directory the directory of the cache (created if it does not exist)
+  */
+case class PersistentCache(directory: String) {
+  /**
+    * The location of the matrix of a simulator
+    * @param id the id of the simulator
+    * @param fingerprint the fingerprint of its data set
+    */
+  def path(id: String, fingerprint: String): String =
+    new java.io.File(directory, id.replaceAll("[^A-Za-z0-9._-]", "_") + "_" + fingerprint + ".bin").getPath
+
+  /**
+    * Open (or create) the matrix of a simulator
+    * @param id the id of the simulator
+    * @param dataset its data set
+    * @param nbatches the number of windows
+    * @param npairs the number of pairs
+    * @return the matrix, or None if the data set has no fingerprint (e.g., live input)
+    */
+  def matrix(id: String, dataset: DataRef, nbatches: Int, npairs: Int): Option[PersistentMatrix] = {
+    dataset.fingerprint.map { fingerprint =>
+      java.nio.file.Files.createDirectories(java.nio.file.Paths.get(directory))
+      PersistentMatrix.open(path(id, fingerprint), nbatches, npairs)
+    }
+  }
+
+  /**
+    * Simulate the stream of an action on a data set: from the cache if it is complete (with a CachedStreamSimulator on
+    * the matrix), otherwise with a StreamSimulator, which completes it.
+    * @param dataset a reference to a data set
+    * @param action an action to compute at each round
+    * @param windowSize size of the sliding window in which to compute the action
+    * @param stepSize size of the step between each window
+    * @param parallelism the number of threads to compute the pairs of a round (see StreamSimulator)
+    * @param cacheOptions the options of the in-memory cache (see ActionCache)
+    * @return the simulator
+    */
+  def simulator(dataset: DataRef, action: Action, windowSize: Int, stepSize: Int, parallelism: Int = 1,
+                cacheOptions: CacheOptions = CacheOptions()): Simulator = {
+    val id = StreamSimulator.id(dataset, action, windowSize, stepSize)
+    dataset.fingerprint.map(path(id, _)) match {
+      case Some(p) if PersistentMatrix.complete(p) => CachedStreamSimulator(MatrixDataRef(id, p, "cache"))
+      case _ => StreamSimulator(dataset, action, windowSize, stepSize, parallelism,
+        cacheOptions.copy(directory = Some(directory)))
+    }
+  }
+}
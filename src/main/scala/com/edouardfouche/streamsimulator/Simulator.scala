@@ -44,6 +44,14 @@ trait Simulator {
   // The cache holds the result of the computation of the whole stream
   val cache: Array[Array[Double]]
 
+  /**
+    * Get the result of the action on every pair of a window, i.e., cache(window)
+    * Simulators that compute the action override it, so that the whole cache is not computed (and held) for that.
+    * @param window the index of the window
+    * @return the outcome of the action for each pair
+    */
+  def cachedRow(window: Int): Array[Double] = cache(window)
+
   /**
     * Get the data for the next sliding window
     * @return the content of the sliding window at the next step
@@ -57,6 +65,36 @@ trait Simulator {
     */
   def nextAndCompute(indexes: Array[Int]): Array[Double]
 
+  /**
+    * Get the computed action on each pair of stream for the next sliding windows, several at once
+    * The outcome of pair indexes(i) in the r-th window is written in buffer(r*indexes.length + i), i.e., as if the
+    * results of rounds calls to nextAndCompute were concatenated. Simulators that can read several windows in bulk
+    * override it, by default it simply calls nextAndCompute for each window.
+    * @param rounds the (maximal) number of windows
+    * @param indexes pairs of the stream on which to compute the action
+    * @param buffer where to write the outcomes, of length at least rounds*indexes.length
+    * @return the number of windows written, lower than rounds if the stream ends before
+    */
+  def nextBatchAndCompute(rounds: Int, indexes: Array[Int], buffer: Array[Double]): Int = {
+    require(buffer.length >= rounds.toLong * indexes.length, "The buffer is too small")
+    var r = 0
+    var depleted = false
+    while(r < rounds && !depleted) {
+      val actions = nextAndCompute(indexes)
+      if(actions.isEmpty && indexes.nonEmpty) depleted = true
+      else {
+        System.arraycopy(actions, 0, buffer, r*indexes.length, indexes.length)
+        r += 1
+      }
+    }
+    r
+  }
+
   def reset(): Unit = state = 0
 
+  /**
+    * Release the resources held by the simulator (e.g., files), when it is discarded
+    */
+  def close(): Unit = {}
+
 }
@@ -16,19 +16,27 @@
  */
 package com.edouardfouche.streamsimulator
 
-import com.edouardfouche.monitoring.actions.Action
-import com.edouardfouche.preprocess.DataRef
+import com.edouardfouche.monitoring.actions.{Action, IndexedAction, SlidingAction, WindowedAction}
+import com.edouardfouche.preprocess.{DataRef, PersistentMatrix}
+import com.edouardfouche.utils.ColumnIndex
 /*
 The purpose of this class is to simulate a stream from a static data set, based on a sliding window
  */
 /**
   * StreamSimulator simulates a stream from a static data set, based on a sliding window
+  * If the action is a WindowedAction, it is computed incrementally from one window to the next (see nextAndCompute).
+  * If the action is an IndexedAction, each column is indexed once per window, and shared by the pairs of this window.
+  * The pairs of a round can be computed in parallel (see parallelism), with the same results as sequentially.
   * @param dataset a reference to a data set
   * @param action an action to compute at each round
   * @param windowSize size of the sliding window in which to compute the action
   * @param stepSize size of the step between each window
+  * @param parallelism the number of threads to compute the pairs of a round in nextAndCompute (see PairEvaluator)
+  * @param cacheOptions the options of the store behind cachedRow (see ActionCache), and of the persistent cache (see
+  *                     PersistentCache): if it is set, the results are read from it, and written to it when computed
   */
-case class StreamSimulator(dataset: DataRef, action: Action, windowSize: Int, stepSize: Int) extends Simulator {
+case class StreamSimulator(dataset: DataRef, action: Action, windowSize: Int, stepSize: Int,
+                           parallelism: Int = 1, cacheOptions: CacheOptions = CacheOptions()) extends Simulator {
   val data: Array[Array[Double]] = dataset.open() // it is supposed to be row-oriented
 
   val ncols: Int = data(0).length
@@ -37,16 +45,37 @@ case class StreamSimulator(dataset: DataRef, action: Action, windowSize: Int, st
   val npairs: Int = pairs.size
   val action_name: String = action.name
 
-  val id: String = dataset.id + "_" + action_name + "_" + windowSize + "_" + stepSize
+  val id: String = StreamSimulator.id(dataset, action, windowSize, stepSize)
 
-  // The cache holds the result of the computation of the whole stream
+  // The persistent matrix of the results, if the cache options give a directory for it
+  val persistent: Option[PersistentMatrix] =
+    cacheOptions.directory.flatMap(PersistentCache(_).matrix(id, dataset, nbatches, npairs))
+
+  // The cache holds the result of the computation of the whole stream (e.g., to precompute it, see BanditCache)
   lazy val cache: Array[Array[Double]] = {
-    (0 to data.length - windowSize by stepSize).par.map { x =>
-      val window = data.slice(x, x + windowSize).transpose
-      pairs.indices.map(y => action.compute(window(pairs(y)._1), window(pairs(y)._2))).toArray
+    (0 until nbatches).par.map { x =>
+      computeWindow(x, pairs.indices.toArray, sequential) // the windows are already computed in parallel
     }.seq.toArray
   }
 
+  // Incremental state of the action, if it supports it (see WindowedAction)
+  private var sliding: Option[SlidingAction] = newSliding()
+  private def newSliding(): Option[SlidingAction] = action match {
+    case a: WindowedAction => Some(a.sliding(npairs, windowSize))
+    case _ => None
+  }
+
+  private val sequential = new PairEvaluator(1)
+  private val evaluator = new PairEvaluator(parallelism)
+
+  // The results of the action, computed by chunks on first access (the whole cache is not computed for cachedRow)
+  lazy val store: ActionCache = {
+    storeopened = true
+    new ActionCache(nbatches, npairs, computeWindow(_, _, evaluator), cacheOptions)
+  }
+  @volatile private var storeopened = false
+
+  override def cachedRow(window: Int): Array[Double] = store.row(window)
   // Return the data for the next sliding window
   def next: Array[Array[Double]] = {
     if(state*stepSize + windowSize > data.length) Array[Array[Double]]()
@@ -60,11 +89,93 @@ case class StreamSimulator(dataset: DataRef, action: Action, windowSize: Int, st
   // Return the computed action on each pair of stream for the next sliding window
   def nextAndCompute(indexes: Array[Int]): Array[Double] = {
     if (state*stepSize + windowSize > data.length) Array[Double]()
-    else {
-      val window = data.slice(state*stepSize, state*stepSize + windowSize).transpose
-      state += 1
-      def compute(index: Int) = action.compute(window(pairs(index)._1), window(pairs(index)._2))
-      indexes.map(x => compute(x))
+    else sliding match {
+      case Some(s) =>
+        val start = state*stepSize
+        state += 1
+        evaluator.map(indexes.length, i => s.cost(indexes(i), start)) { i =>
+          val x = indexes(i)
+          s.compute(x, pairs(x)._1, pairs(x)._2, start, data, data.length)
+        }
+      case None =>
+        state += 1
+        computeWindow(state - 1, indexes, evaluator)
+    }
+  }
+
+  // The last windows, by column. The chunks of a window (see ActionCache) are computed one after the other, so the
+  // window is only transposed once for all of them.
+  private val columns = new java.util.LinkedHashMap[Int, Array[Array[Double]]](4, 0.75f, true) {
+    override def removeEldestEntry(eldest: java.util.Map.Entry[Int, Array[Array[Double]]]): Boolean =
+      size > StreamSimulator.ntransposed
+  }
+
+  // Get a window (given by its index), by column
+  private def transposed(index: Int): Array[Array[Double]] = {
+    val cached = columns.synchronized(columns.get(index))
+    if(cached != null) cached
+    else { // transposed outside of the lock, as the windows of the cache are computed in parallel
+      val window = data.slice(index*stepSize, index*stepSize + windowSize).transpose
+      columns.synchronized(columns.put(index, window))
+      window
+    }
+  }
+
+  // Compute the action on some pairs of a window (given by its index), or read them from the persistent cache
+  private def computeWindow(index: Int, indexes: Array[Int], evaluator: PairEvaluator): Array[Double] = {
+    def compute(indexes: Array[Int]): Array[Double] = computePairs(index, transposed(index), indexes, evaluator)
+    persistent match {
+      case Some(m) =>
+        val values = new Array[Double](indexes.length)
+        val missing = m.read(index, indexes, values)
+        if(missing.nonEmpty) {
+          val computed = compute(missing.map(indexes))
+          m.write(index, missing.map(indexes), computed)
+          for(i <- missing.indices) values(missing(i)) = computed(i)
+        }
+        values
+      case None => compute(indexes)
     }
   }
+
+  // Compute the action on some pairs of a window (given by its index and by column)
+  private def computePairs(w: Int, window: Array[Array[Double]], indexes: Array[Int],
+                           evaluator: PairEvaluator): Array[Double] =
+    action match {
+      case a: IndexedAction =>
+        // Index the columns of the pairs first (once per column), then compute the pairs, which all cost about the same
+        val columns = indexes.flatMap(x => Array(pairs(x)._1, pairs(x)._2)).distinct
+        val columnindexes = new Array[ColumnIndex](ncols)
+        evaluator.foreach(columns.length)(i => columnindexes(columns(i)) = a.index(window(columns(i)), w, columns(i)))
+        evaluator.map(indexes.length) { i =>
+          val x = indexes(i)
+          a.compute(columnindexes(pairs(x)._1), columnindexes(pairs(x)._2))
+        }
+      case _ =>
+        evaluator.map(indexes.length) { i =>
+          val x = indexes(i)
+          action.compute(window(pairs(x)._1), window(pairs(x)._2))
+        }
+    }
+
+  override def reset(): Unit = {
+    super.reset()
+    sliding = newSliding()
+  }
+
+  // Release the store, and its spill file
+  override def close(): Unit = {
+    if(storeopened) store.close()
+    columns.synchronized(columns.clear())
+  }
+}
+
+object StreamSimulator {
+  /**
+    * The id of a StreamSimulator, e.g., to find its results in a PersistentCache without opening the data set
+    */
+  def id(dataset: DataRef, action: Action, windowSize: Int, stepSize: Int): String =
+    dataset.id + "_" + action.name + "_" + windowSize + "_" + stepSize
+
+  val ntransposed = 2 // The number of windows kept by column, to compute the chunks of the ActionCache
 }
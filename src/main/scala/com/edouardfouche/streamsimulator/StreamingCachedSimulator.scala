@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.streamsimulator
+
+import com.edouardfouche.preprocess.{DataRef, RowReader}
+
+/**
+  * The streaming counterpart of the "CachedStreamSimulator": the DataRef (dataset) points to a pre-computed stream,
+  * i.e., an action matrix, which is read one row per round instead of being loaded as a whole.
+  * @param dataset a reference to a data set, which actually is the corresponding action matrix
+  * @param nbatches the number of rounds to simulate at most, if known (Int.MaxValue for an unknown/unbounded number).
+  *                 The stream ends anyway when the data set is depleted.
+  *
+  * @note The whole data and the cache are not available in this mode (e.g., for the static oracles).
+  */
+case class StreamingCachedSimulator(dataset: DataRef, nbatches: Int = Int.MaxValue) extends Simulator {
+  require(dataset.category == "cache")
+
+  private var reader: RowReader = dataset.rows()
+
+  val id: String = dataset.id
+  val npairs: Int = reader.ncols
+
+  // Note: The assumption is that the number of columns in the given data set corresponds to the number of combination
+  // in a matrix, i.e., that there exists a n such that n(n-1)/2 = data(0) (number of dimensions/pairs)
+  val ncols: Int = ((1.0/2.0)*(scala.math.sqrt(8.0*npairs+1.0)+1.0)).toInt // this gives back the number of cols from the number of pairs
+
+  val pairs: Array[(Int, Int)] = (0 until npairs).map(x => (x,x)).toArray // obviously, this one is not so relevant.
+
+  val windowSize = 1
+  val stepSize = 1
+  val action_name = "U"
+
+  lazy val data: Array[Array[Double]] = throw new Error(s"The data of $id is not available in streaming mode")
+  lazy val cache: Array[Array[Double]] = throw new Error(s"The cache of $id is not available in streaming mode")
+
+  private val row: Array[Double] = new Array[Double](npairs) // the current row
+  private var depleted: Boolean = false
+
+  private def advance(): Boolean = {
+    if(depleted || state >= nbatches) return false
+    if(!reader.next(row)) {
+      depleted = true
+      reader.close()
+      false
+    } else {
+      state += 1
+      true
+    }
+  }
+
+  // Returns the precomputed actions in the next window.
+  def next: Array[Array[Double]] = {
+    if(!advance()) Array[Array[Double]]()
+    else Array(row.clone)
+  }
+
+  def nextAndCompute(indexes: Array[Int]): Array[Double] = {
+    if(!advance()) Array[Double]()
+    else indexes.map(x => row(x))
+  }
+
+  // Read the data set again from the start (for live input, this opens the input again)
+  override def reset(): Unit = {
+    super.reset()
+    reader.close()
+    reader = dataset.rows()
+    require(reader.ncols == npairs, s"The number of columns of ${dataset.id} changed")
+    depleted = false
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.streamsimulator
+
+import com.edouardfouche.monitoring.actions.{Action, IndexedAction, SlidingAction, WindowedAction}
+import com.edouardfouche.preprocess.{DataRef, RowReader}
+import com.edouardfouche.utils.ColumnIndex
+
+/**
+  * StreamingSimulator simulates a stream from a data set read row by row, based on a sliding window.
+  * In opposition to the "StreamSimulator", the data set is never loaded as a whole: only the rows of the current
+  * window are kept, in a ring buffer. This allows to monitor data sets that do not fit in memory, or live input
+  * (see LiveDataRef), for which the number of windows is not known in advance.
+  * If the action is a WindowedAction, it is computed incrementally, and the ring buffer also keeps the windowSize rows
+  * before the current window, so that a pair can catch up even if it was not computed in the last windows.
+  * If the action is an IndexedAction, each column is indexed once per window, and shared by the pairs of this window.
+  * The pairs of a round can be computed in parallel (see parallelism), with the same results as sequentially.
+  *
+  * @param dataset a reference to a data set, read with dataset.rows()
+  * @param action an action to compute at each round
+  * @param windowSize size of the sliding window in which to compute the action
+  * @param stepSize size of the step between each window
+  * @param nbatches the number of windows to simulate at most, if known (Int.MaxValue for an unknown/unbounded number).
+  *                 The stream ends anyway when the data set is depleted.
+  * @param parallelism the number of threads to compute the pairs of a round in nextAndCompute (see PairEvaluator)
+  *
+  * @note The whole data and the cache are not available in this mode (e.g., for the static oracles).
+  *       The rows are indexed with an Int, so a stream is limited to Int.MaxValue rows.
+  */
+case class StreamingSimulator(dataset: DataRef, action: Action, windowSize: Int, stepSize: Int,
+                              nbatches: Int = Int.MaxValue, parallelism: Int = 1) extends Simulator {
+  require(windowSize >= 1 & stepSize >= 1, "windowSize and stepSize must be positive")
+
+  private var reader: RowReader = dataset.rows()
+
+  val ncols: Int = reader.ncols
+  val pairs: Array[(Int, Int)] = (0 until ncols).flatMap(x => (0 until x).map(y => (x, y))).toArray
+  val npairs: Int = pairs.size
+  val action_name: String = action.name
+
+  val id: String = dataset.id + "_" + action_name + "_" + windowSize + "_" + stepSize
+
+  lazy val data: Array[Array[Double]] = throw new Error(s"The data of $id is not available in streaming mode")
+  lazy val cache: Array[Array[Double]] = throw new Error(s"The cache of $id is not available in streaming mode")
+
+  // Incremental state of the action, if it supports it (see WindowedAction)
+  private def newSliding(): Option[SlidingAction] = action match {
+    case a: WindowedAction => Some(a.sliding(npairs, windowSize))
+    case _ => None
+  }
+  private var sliding: Option[SlidingAction] = newSliding()
+
+  // Ring buffer of the last rows (row i is at position i % capacity)
+  private val capacity: Int = if(sliding.isDefined) 2*windowSize else windowSize
+  private val rows: Array[Array[Double]] = Array.ofDim[Double](capacity, ncols)
+  private var nread: Int = 0 // number of rows read so far
+  private var depleted: Boolean = false
+
+  private def start: Int = nread - windowSize // index of the first row in the current window
+
+  // The columns of the current window, in order, materialized on demand (at most once per window)
+  private val columns: Array[Array[Double]] = new Array[Array[Double]](ncols)
+  private val columnstate: Array[Int] = Array.fill(ncols)(-1)
+  // The indexes of the columns of the current window, for an IndexedAction (at most once per window)
+  private val columnindexes: Array[ColumnIndex] = new Array[ColumnIndex](ncols)
+  private val indexstate: Array[Int] = Array.fill(ncols)(-1)
+
+  private val evaluator = new PairEvaluator(parallelism)
+
+  // Move the window by one step, i.e., read stepSize rows (windowSize rows for the first window)
+  private def advance(): Boolean = {
+    if(depleted || state >= nbatches) return false
+    val nrows = if(state == 0) windowSize else stepSize
+    var i = 0
+    while(i < nrows) {
+      if(!reader.next(rows(nread % capacity))) {
+        depleted = true
+        reader.close()
+        return false
+      }
+      nread += 1
+      i += 1
+    }
+    state += 1
+    true
+  }
+
+  // Get a column of the current window, in order (from the oldest to the newest row)
+  private def column(j: Int): Array[Double] = {
+    if(columnstate(j) != state) {
+      if(columns(j) == null) columns(j) = new Array[Double](windowSize)
+      val values = columns(j)
+      var i = 0
+      while(i < windowSize) {
+        values(i) = rows((start + i) % capacity)(j)
+        i += 1
+      }
+      columnstate(j) = state
+    }
+    columns(j)
+  }
+
+  // Get the index of a column of the current window
+  private def index(a: IndexedAction, j: Int): ColumnIndex = {
+    if(indexstate(j) != state) {
+      columnindexes(j) = a.index(column(j), state - 1, j) // the windows are counted from 0, as in StreamSimulator
+      indexstate(j) = state
+    }
+    columnindexes(j)
+  }
+
+  // Return the data for the next sliding window
+  def next: Array[Array[Double]] = {
+    if(!advance()) Array[Array[Double]]()
+    else Array.tabulate(windowSize)(i => rows((start + i) % capacity).clone)
+  }
+
+  // Return the computed action on each pair of stream for the next sliding window
+  def nextAndCompute(indexes: Array[Int]): Array[Double] = {
+    if(!advance()) Array[Double]()
+    else sliding match {
+      case Some(s) =>
+        evaluator.map(indexes.length, i => s.cost(indexes(i), start)) { i =>
+          val x = indexes(i)
+          s.compute(x, pairs(x)._1, pairs(x)._2, start, rows, capacity)
+        }
+      case None =>
+        // Materialize the columns of the pairs first (once per column, and indexed for an IndexedAction), then compute
+        // the pairs, which all cost about the same
+        val columns = indexes.flatMap(x => Array(pairs(x)._1, pairs(x)._2)).distinct
+        action match {
+          case a: IndexedAction =>
+            evaluator.foreach(columns.length)(i => index(a, columns(i)))
+            evaluator.map(indexes.length) { i =>
+              val x = indexes(i)
+              a.compute(index(a, pairs(x)._1), index(a, pairs(x)._2))
+            }
+          case _ =>
+            evaluator.foreach(columns.length)(i => column(columns(i)))
+            evaluator.map(indexes.length) { i =>
+              val x = indexes(i)
+              action.compute(column(pairs(x)._1), column(pairs(x)._2))
+            }
+        }
+    }
+  }
+
+  // Read the data set again from the start (for live input, this opens the input again)
+  override def reset(): Unit = {
+    super.reset()
+    reader.close()
+    reader = dataset.rows()
+    require(reader.ncols == ncols, s"The number of columns of ${dataset.id} changed")
+    nread = 0
+    depleted = false
+    sliding = newSliding()
+    java.util.Arrays.fill(columnstate, -1)
+    java.util.Arrays.fill(indexstate, -1)
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.utils
+
+import java.util.SplittableRandom
+
+/**
+  * Sampler for Beta distributions over primitive parameter arrays, as the ratio X/(X+Y) of two Gamma variables
+  * X ~ Gamma(alpha, 1) and Y ~ Gamma(beta, 1). The Gamma variables are drawn with the method of Marsaglia and Tsang
+  * ("A Simple Method for Generating Gamma Variables", 2000) on a SplittableRandom, i.e., without allocating anything.
+  *
+  * When one of the parameters is smaller than 1, the Gamma variables are drawn in log-space
+  * (Gamma(a) = Gamma(a+1) * U^(1/a)), so that very small parameters (e.g., 0.001) do not underflow to 0/0.
+  *
+  * @param random the source of randomness
+  * @note An instance is not thread-safe, every bandit should have its own.
+  */
+class BetaSampler(random: SplittableRandom) {
+  def this() = this(new SplittableRandom())
+  def this(seed: Long) = this(new SplittableRandom(seed))
+
+  private var spare: Double = 0.0 // The polar method generates normal variables by pairs
+  private var hasSpare: Boolean = false
+
+  /**
+    * Draw from Beta(alpha(x), beta(x)) for each x, in one pass
+    * @param alpha the first parameter of each distribution (> 0)
+    * @param beta the second parameter of each distribution (> 0)
+    * @param draws the array in which the draws are written, of the same length
+    */
+  def fill(alpha: Array[Double], beta: Array[Double], draws: Array[Double]): Unit = {
+    var x = 0
+    while(x < draws.length) {
+      draws(x) = draw(alpha(x), beta(x))
+      x += 1
+    }
+  }
+
+  /**
+    * Draw from Beta(a, b)
+    * @param a the first parameter (> 0)
+    * @param b the second parameter (> 0)
+    * @return a value in [0,1]
+    */
+  def draw(a: Double, b: Double): Double = {
+    if(a >= 1.0 && b >= 1.0) {
+      val x = gamma(a)
+      val y = gamma(b)
+      x / (x + y)
+    } else {
+      val logx = logGamma(a)
+      val logy = logGamma(b)
+      1.0 / (1.0 + math.exp(logy - logx))
+    }
+  }
+
+  /**
+    * Draw from Gamma(shape, 1) with shape >= 1 (Marsaglia and Tsang)
+    */
+  def gamma(shape: Double): Double = {
+    val d = shape - 1.0/3.0
+    val c = 1.0 / math.sqrt(9.0 * d)
+    while(true) {
+      val x = normal()
+      val v0 = 1.0 + c * x
+      if(v0 > 0.0) {
+        val v = v0 * v0 * v0
+        val u = uniform()
+        val x2 = x * x
+        if(u < 1.0 - 0.0331 * x2 * x2) return d * v
+        if(math.log(u) < 0.5 * x2 + d * (1.0 - v + math.log(v))) return d * v
+      }
+    }
+    throw new Error("unreachable")
+  }
+
+  /**
+    * Draw the logarithm of a Gamma(shape, 1) variable, for any shape > 0
+    */
+  def logGamma(shape: Double): Double = {
+    if(shape >= 1.0) math.log(gamma(shape))
+    else math.log(gamma(shape + 1.0)) + math.log(uniform()) / shape
+  }
+
+  // Uniform in (0,1], so that the logarithm is finite
+  @inline private def uniform(): Double = 1.0 - random.nextDouble()
+
+  // Standard normal, with the polar method of Marsaglia
+  private def normal(): Double = {
+    if(hasSpare) {
+      hasSpare = false
+      spare
+    } else {
+      var u = 0.0
+      var v = 0.0
+      var s = 0.0
+      do {
+        u = 2.0 * random.nextDouble() - 1.0
+        v = 2.0 * random.nextDouble() - 1.0
+        s = u * u + v * v
+      } while(s >= 1.0 || s == 0.0)
+      val factor = math.sqrt(-2.0 * math.log(s) / s)
+      spare = v * factor
+      hasSpare = true
+      u * factor
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.utils
+
+/**
+  * Index of a column of values: its sorted order, the sorted values, the position of each value in the sorted order,
+  * and its ranks. Each is computed once, when first needed, so that an index can be shared by all the computations
+  * that involve this column, e.g., by all the pairs of a window (see IndexedAction).
+  *
+  * @param values the values of the column (not copied, and not to be modified afterwards)
+  */
+class ColumnIndex(val values: Array[Double]) {
+  val n: Int = values.length
+
+  // The indexes of the values in increasing order (ties by ascending index)
+  lazy val order: Array[Int] = new TopK(n).smallest(values, n)
+
+  // The values in increasing order
+  lazy val sorted: Array[Double] = {
+    val s = new Array[Double](n)
+    var p = 0
+    while(p < n) {
+      s(p) = values(order(p))
+      p += 1
+    }
+    s
+  }
+
+  // The position of each value in sorted
+  lazy val position: Array[Int] = {
+    val positions = new Array[Int](n)
+    var p = 0
+    while(p < n) {
+      positions(order(p)) = p
+      p += 1
+    }
+    positions
+  }
+
+  // The rank of each value, from 1 to n, with the average rank for ties (as NaturalRanking, by default)
+  lazy val ranks: Array[Double] = {
+    val r = new Array[Double](n)
+    var from = 0
+    while(from < n) {
+      var to = from + 1
+      while(to < n && sorted(to) == sorted(from)) to += 1
+      val rank = (from + to + 1) / 2.0 // average of the ranks from + 1 to to
+      var p = from
+      while(p < to) {
+        r(order(p)) = rank
+        p += 1
+      }
+      from = to
+    }
+    r
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.utils
+
+/**
+  * Binary min-heap over the keys of n items (e.g., the arms of a bandit), where the key of any item can be changed.
+  * The heap keeps the position of each item, so that changing a key is O(log n), and finding the item with the
+  * smallest key is O(1).
+  *
+  * Ties are broken by ascending index, so that min gives the same item as (0 until n).minBy(key).
+  *
+  * @param n the number of items
+  * @param initial the initial key of each item
+  */
+class IndexedMinHeap(val n: Int, initial: Int => Double = _ => 0.0) {
+  require(n >= 1, "The heap must have at least one item")
+  private val keys: Array[Double] = Array.tabulate(n)(initial)
+  private val heap: Array[Int] = Array.range(0, n) // the items, in heap order
+  private val positions: Array[Int] = Array.range(0, n) // the position of each item in the heap
+  heapify()
+
+  /**
+    * @return the key of an item
+    */
+  def apply(item: Int): Double = keys(item)
+
+  /**
+    * Change the key of an item
+    */
+  def update(item: Int, key: Double): Unit = {
+    val previous = keys(item)
+    keys(item) = key
+    if(key < previous) up(positions(item))
+    else if(key > previous) down(positions(item))
+  }
+
+  /**
+    * Set the key of every item, in O(n)
+    */
+  def reset(key: Int => Double): Unit = {
+    var i = 0
+    while(i < n) {
+      keys(i) = key(i)
+      heap(i) = i
+      positions(i) = i
+      i += 1
+    }
+    heapify()
+  }
+
+  /**
+    * @return the item with the smallest key
+    */
+  def min: Int = heap(0)
+
+  /**
+    * @return the smallest key
+    */
+  def minKey: Double = keys(heap(0))
+
+  @inline private def less(a: Int, b: Int): Boolean = keys(a) < keys(b) || (keys(a) == keys(b) && a < b)
+
+  private def heapify(): Unit = {
+    var i = n / 2 - 1
+    while(i >= 0) {
+      down(i)
+      i -= 1
+    }
+  }
+
+  private def up(from: Int): Unit = {
+    var i = from
+    val item = heap(i)
+    var moving = true
+    while(i > 0 && moving) {
+      val parent = (i - 1) / 2
+      if(less(item, heap(parent))) {
+        place(heap(parent), i)
+        i = parent
+      } else moving = false
+    }
+    place(item, i)
+  }
+
+  private def down(from: Int): Unit = {
+    var i = from
+    val item = heap(i)
+    var moving = true
+    while(2 * i + 1 < n && moving) {
+      var child = 2 * i + 1
+      if(child + 1 < n && less(heap(child + 1), heap(child))) child += 1
+      if(less(heap(child), item)) {
+        place(heap(child), i)
+        i = child
+      } else moving = false
+    }
+    place(item, i)
+  }
+
+  @inline private def place(item: Int, position: Int): Unit = {
+    heap(position) = item
+    positions(item) = position
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.utils
+
+/**
+  * Inversion of the KL-divergence for KL-UCB indexes, shared by the KL-UCB bandits and the KL-based scaling strategies.
+  * The implementation is based on https://github.com/jkomiyama/multiplaybanditlib/blob/master/policy/policy_klucb.hpp
+  */
+object KLUCB {
+  val Ndelta: Double = scala.math.pow(10,-8)
+  val eps: Double = scala.math.pow(10,-12)
+  val maxiter = 20
+
+  // calculate the kl-divergence
+  def kl(p: Double, q: Double): Double = {
+    p * scala.math.log(p/q) + (1-p)*scala.math.log((1-p)/(1-q))
+  }
+  // calculate the derivative kl-divergence
+  def dkl(p: Double , q: Double): Double = {
+    (q-p) / (q * (1.0 - q))
+  }
+
+  // Exploration terms, as a function of the time step and of the number of pulls of an arm
+  def exploration(t: Double, n: Double): Double = scala.math.log(t) / n // KL-UCB
+  def explorationPlus(t: Double, n: Double): Double = scala.math.log(t / n) / n // KL-UCB+
+
+  /**
+    * Largest q such that kl(p,q) <= logndn, with Newton's method
+    * @param p the empirical mean of an arm
+    * @param logndn the exploration term
+    * @return the KL-UCB index
+    */
+  def upper(p: Double, logndn: Double): Double = {
+    if(p >= 1.0) return 1.0
+
+    var q = p + Ndelta
+    var i = 1
+    while(i <= maxiter) {
+      val f = logndn - kl(p,q)
+      val df = -dkl(p,q)
+      if(f*f < eps) return q // newton's method has converged
+      q = (1.0-Ndelta).min((q - f/df).max(p+Ndelta))
+      i += 1
+    }
+    q
+  }
+
+  /**
+    * Whether q is a solution of kl(p,q) = logndn, up to the tolerance of Newton's method
+    */
+  def converged(p: Double, logndn: Double, q: Double): Boolean = {
+    val f = logndn - kl(p,q)
+    f*f < eps
+  }
+
+  /*
+   * Fast inversion: the solution of Newton's method is tabulated on a grid of p (in [0,1]) and of sqrt(logndn)
+   * (in [0, sqrt(maxlogndn)]). An index is interpolated bilinearly from the table and refined by a single Newton step.
+   * The index grows like sqrt(logndn) for small logndn, hence the grid in sqrt(logndn).
+   */
+  val tablesize = 256
+  val maxlogndn = 16.0 // Beyond (i.e., log(t) / n > 16), we fall back to the exact solver
+  // Bound on the difference between upperFast and upper. Measured maximum: 7.1e-4 for logndn < 1e-6, where upper itself
+  // is only precise up to its tolerance, 2.7e-4 for logndn in [1e-6, 0.01], 3e-5 up to 1 and 4.2e-7 up to 16.
+  val fasterror = 1e-3
+  private val maxsqrt = math.sqrt(maxlogndn)
+
+  // table(i*(tablesize+1) + j) is the index for p = i/tablesize and logndn = (j/tablesize * sqrt(maxlogndn))^2
+  lazy val table: Array[Double] = {
+    val values = new Array[Double]((tablesize+1)*(tablesize+1))
+    for(i <- 0 to tablesize; j <- 0 to tablesize) {
+      val p = (i.toDouble / tablesize).max(Ndelta)
+      val s = j.toDouble / tablesize * maxsqrt
+      values(i*(tablesize+1) + j) = upper(p, s*s)
+    }
+    values
+  }
+
+  /**
+    * Largest q such that kl(p,q) <= logndn, interpolated from a table and refined with one step of Newton's method
+    * The difference with upper(p, logndn) is below fasterror. This is about 10 times faster than upper.
+    * @param p the empirical mean of an arm
+    * @param logndn the exploration term
+    * @return the (approximate) KL-UCB index
+    */
+  def upperFast(p: Double, logndn: Double): Double = {
+    if(p >= 1.0) return 1.0
+    if(logndn > maxlogndn || logndn <= 0.0) return upper(p, logndn)
+
+    val x = p * tablesize
+    val y = math.sqrt(logndn) / maxsqrt * tablesize
+    val i = (x.toInt).min(tablesize - 1)
+    val j = (y.toInt).min(tablesize - 1)
+    val dx = x - i
+    val dy = y - j
+    val row = i*(tablesize+1) + j
+    val q0 = (1-dx)*(1-dy)*table(row) + (1-dx)*dy*table(row+1) +
+      dx*(1-dy)*table(row+tablesize+1) + dx*dy*table(row+tablesize+2)
+
+    var q = (1.0-Ndelta).min(q0.max(p+Ndelta))
+    val f = logndn - kl(p,q)
+    val df = -dkl(p,q)
+    q = (1.0-Ndelta).min((q - f/df).max(p+Ndelta))
+    q
+  }
+}
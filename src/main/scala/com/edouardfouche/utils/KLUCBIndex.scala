@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.utils
+
+/**
+  * Cache of the KL-UCB indexes of a set of arms, to find the arms with the largest indexes without running
+  * Newton's method for every arm at every round.
+  *
+  * The index of an arm only depends on its sums, its counts and on t. For each arm, the cache keeps the last exact
+  * index and the statistics it was computed from. An index is recomputed only if these statistics changed AND
+  * an upper bound of the new index could reach the top of the ranking. The upper bound is the minimum of
+  * - Pinsker's inequality, kl(p,q) >= 2(p-q)^2, i.e., q <= p + sqrt(logndn/2),
+  * - the tangent at the cached index, when the arm was not pulled since then: the index is a concave, increasing
+  *   function of the exploration term (the inverse of the convex kl(p, .)), so the tangent bounds it for any new t.
+  * Both bounds take the tolerance of Newton's method into account, so that the arms selected are the same as when
+  * computing all the indexes exactly (including the ties, broken by ascending index).
+  *
+  * @param narms the number of arms
+  * @param exploration the exploration term, as a function of t and of the number of pulls of an arm
+  * @param fast whether to use the fast, approximate inversion of the KL-divergence (see KLUCB.upperFast). The bounds
+  *             are then widened by KLUCB.fasterror, so the arms selected are the same as when computing all the fast
+  *             indexes.
+  * @note The arrays of sums and counts are given at each call instead of being held by the cache, so that a cache
+  *       can be associated to some arrays (e.g., in a WeakHashMap) without keeping them alive.
+  */
+class KLUCBIndex(val narms: Int, exploration: (Double, Double) => Double, val fast: Boolean = false) {
+  private val tolerance = 4 * math.sqrt(KLUCB.eps) // tolerance of Newton's method on kl(p,q), with some margin
+  private val margin = if(fast) KLUCB.fasterror else 0.0 // difference between the fast and the exact indexes
+
+  // Snapshot of the statistics each cached index was computed from (NaN never equals anything: nothing is cached)
+  private val values = new Array[Double](narms)
+  private val snapshotsums = Array.fill(narms)(Double.NaN)
+  private val snapshotcounts = Array.fill(narms)(Double.NaN)
+  private val snapshott = Array.fill(narms)(Double.NaN)
+  private val snapshotexploration = new Array[Double](narms)
+  private val snapshotconverged = new Array[Boolean](narms)
+
+  // Scratch space
+  private val bounds = new Array[Double](narms)
+  private val exact = new Array[Boolean](narms)
+  private val topk = new TopK(narms)
+
+  // Direct-mapped memo of the solver: the index only depends on p and on the exploration term, and many arms share
+  // the same statistics (typically with binary rewards), i.e., they tie, and must all be computed exactly.
+  private val memosize = 4096
+  private val memop = Array.fill(memosize)(Double.NaN)
+  private val memologndn = Array.fill(memosize)(Double.NaN)
+  private val memovalues = new Array[Double](memosize)
+  private val memoconverged = new Array[Boolean](memosize)
+
+  /**
+    * Get the index of an arm, computed exactly (or read from the cache)
+    * @param sums the sum of the gains of each arm
+    * @param counts the number of pulls of each arm
+    * @param arm the arm
+    * @param t the current time step
+    * @return the KL-UCB index of the arm (1.0 if the arm was never pulled)
+    */
+  def apply(sums: Array[Double], counts: Array[Double], arm: Int, t: Double): Double = {
+    if(t == 0.0 | counts(arm) == 0.0) 1.0
+    else if(sums(arm) == snapshotsums(arm) && counts(arm) == snapshotcounts(arm) && t == snapshott(arm)) values(arm)
+    else refresh(sums, counts, arm, t)
+  }
+
+  /**
+    * Get the arms with the m largest indexes
+    * @param sums the sum of the gains of each arm
+    * @param counts the number of pulls of each arm
+    * @param t the current time step
+    * @param m the number of arms
+    * @return the m arms with the largest KL-UCB indexes, in decreasing order of index
+    */
+  def largest(sums: Array[Double], counts: Array[Double], t: Double, m: Int): Array[Int] = {
+    require(sums.length == narms && counts.length == narms)
+    var x = 0
+    while(x < narms) {
+      if(t == 0.0 | counts(x) == 0.0) {
+        exact(x) = true
+        bounds(x) = 1.0
+      } else if(sums(x) == snapshotsums(x) && counts(x) == snapshotcounts(x) && t == snapshott(x)) {
+        exact(x) = true
+        bounds(x) = values(x)
+      } else {
+        val p = (sums(x)/counts(x)).max(KLUCB.Ndelta)
+        if(p >= 1.0) {
+          exact(x) = true
+          bounds(x) = 1.0
+        } else {
+          exact(x) = false
+          val logndn = exploration(t, counts(x))
+          var bound = p + math.sqrt((logndn.max(0.0) + tolerance)/2.0) // Pinsker
+          if(sums(x) == snapshotsums(x) && counts(x) == snapshotcounts(x) && snapshotconverged(x)) { // Tangent
+            val q = values(x)
+            val tangent = q + (q*(1.0-q)/(q-p)) * (logndn - snapshotexploration(x) + tolerance)
+            if(tangent < bound) bound = tangent
+          }
+          // Newton's method never leaves [p+Ndelta, 1-Ndelta] (it stops at p+Ndelta if 1-Ndelta is below)
+          bounds(x) = (bound + margin).min((1.0 - KLUCB.Ndelta).max(p + KLUCB.Ndelta)).max(p + KLUCB.Ndelta)
+        }
+      }
+      x += 1
+    }
+
+    // The exact indexes of the arms with the m largest bounds give a threshold:
+    // The arms whose bound is strictly below it cannot be in the top-m.
+    val candidates = topk.largest(bounds, m)
+    var threshold = Double.PositiveInfinity
+    var i = 0
+    while(i < candidates.length) {
+      val arm = candidates(i)
+      if(!exact(arm)) refresh(sums, counts, arm, t)
+      threshold = threshold.min(bounds(arm))
+      i += 1
+    }
+
+    x = 0
+    while(x < narms) {
+      if(!exact(x)) {
+        if(bounds(x) >= threshold) refresh(sums, counts, x, t)
+        else bounds(x) = Double.NegativeInfinity
+      }
+      x += 1
+    }
+    topk.largest(bounds, m)
+  }
+
+  // Compute the exact index of an arm, and put it in the cache and in the bounds
+  private def refresh(sums: Array[Double], counts: Array[Double], arm: Int, t: Double): Double = {
+    val p = (sums(arm)/counts(arm)).max(KLUCB.Ndelta)
+    val logndn = exploration(t, counts(arm))
+    val slot = (java.lang.Double.hashCode(p) * 31 + java.lang.Double.hashCode(logndn)) & (memosize - 1)
+    if(memop(slot) != p || memologndn(slot) != logndn) {
+      val q = if(fast) KLUCB.upperFast(p, logndn) else KLUCB.upper(p, logndn)
+      memop(slot) = p
+      memologndn(slot) = logndn
+      memovalues(slot) = q
+      memoconverged(slot) = p < 1.0 && KLUCB.converged(p, logndn, q)
+    }
+    val q = memovalues(slot)
+    values(arm) = q
+    snapshotsums(arm) = sums(arm)
+    snapshotcounts(arm) = counts(arm)
+    snapshott(arm) = t
+    snapshotexploration(arm) = logndn
+    snapshotconverged(arm) = memoconverged(slot)
+    exact(arm) = true
+    bounds(arm) = q
+    q
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.utils
+
+/**
+  * Mutual information between two arrays, with the nearest-neighbor estimator of Kraskov et al. ("Estimating Mutual
+  * Information", 2004, second estimator), specialised to 2 dimensions and primitive arrays.
+  *
+  * It gives the same results as kit.edu.DependencyEstimation.ElkiTotalCorrelation on 2 columns (in bits), which builds
+  * an ELKI database with an R*-tree for every call and counts the marginal neighbors with an O(n²) loop. Here:
+  * - the k nearest neighbors (under the maximum norm, the point itself included, ties included) are found with a sweep
+  *   over the points sorted by x, from the point outwards (on each side), which stops as soon as the gap in x exceeds
+  *   the current k-th distance,
+  * - the marginal neighbor counts come from binary searches in the sorted marginals, i.e., O(n log n) in total,
+  * - the digamma values are tabulated, with the same recurrence (and the same rounding) as Digamma.digamma.
+  * The sorted marginals can be shared between estimations, with a ColumnIndex for each array.
+  */
+object KraskovMI {
+  private val C = 0.57721566490153286060 // Euler-Mascheroni constant, as in Digamma
+
+  /**
+    * Estimate the mutual information between x and y
+    * @param x the first array of doubles
+    * @param y the second array of doubles, of the same length
+    * @param k the number of nearest neighbors
+    * @return the mutual information between x and y, in bits
+    */
+  def estimate(x: Array[Double], y: Array[Double], k: Int): Double = estimate(new ColumnIndex(x), new ColumnIndex(y), k)
+
+  /**
+    * Estimate the mutual information between two indexed arrays
+    * @param cx the index of the first array of doubles
+    * @param cy the index of the second array of doubles, of the same length
+    * @param k the number of nearest neighbors
+    * @return the mutual information between the two arrays, in bits
+    */
+  def estimate(cx: ColumnIndex, cy: ColumnIndex, k: Int): Double = {
+    require(cx.n == cy.n, "x and y must have the same length")
+    require(k >= 1 && k < cx.n, "k must be between 1 and the number of points - 1")
+    val n = cx.n
+    val x = cx.values
+    val y = cy.values
+
+    // The points sorted by x, and the sorted marginals
+    val byx = cx.order
+    val xs = cx.sorted // x, sorted
+    val positionx = cx.position // the position of each point in xs
+    val ys = new Array[Double](n) // y, in the order of x
+    var p = 0
+    while(p < n) {
+      ys(p) = y(byx(p))
+      p += 1
+    }
+    val ysorted = cy.sorted // y, sorted
+    val positiony = cy.position // the position of each point in ysorted
+
+    val digamma = digammaTable(n)
+    val heap = new Array[Double](k + 1) // the k+1 smallest distances so far, in increasing order
+    var digammaBinSum = 0.0
+    val epsx = new Array[Double](n)
+    val epsy = new Array[Double](n)
+    p = 0
+    while(p < n) {
+      // Sweep from p outwards, to find the distance to the k-th neighbor (the point itself is the 0-th): first to the
+      // right, then to the left, as long as the gap in x does not exceed the current k-th distance
+      val xi = xs(p)
+      val yi = ys(p)
+      java.util.Arrays.fill(heap, Double.PositiveInfinity)
+      heap(0) = 0.0
+      var hi = p + 1
+      while(hi < n && math.abs(xi - xs(hi)) <= heap(k)) {
+        insert(heap, math.max(math.abs(xi - xs(hi)), math.abs(yi - ys(hi))))
+        hi += 1
+      }
+      var lo = p - 1
+      while(lo >= 0 && math.abs(xi - xs(lo)) <= heap(k)) {
+        insert(heap, math.max(math.abs(xi - xs(lo)), math.abs(yi - ys(lo))))
+        lo -= 1
+      }
+      // The projected distances: the largest distance in x and y among the neighbors (ties included)
+      val kdistance = heap(k)
+      var ex = 0.0
+      var ey = 0.0
+      var q = lo + 1
+      while(q < hi) {
+        val dx = math.abs(xi - xs(q))
+        val dy = math.abs(yi - ys(q))
+        if(math.max(dx, dy) <= kdistance) {
+          if(dx > ex) ex = dx
+          if(dy > ey) ey = dy
+        }
+        q += 1
+      }
+      epsx(byx(p)) = ex
+      epsy(byx(p)) = ey
+      p += 1
+    }
+
+    var i = 0
+    while(i < n) { // in the original order, to sum the digamma values in the same order as ElkiTotalCorrelation
+      digammaBinSum += digamma(count(xs, positionx(i), epsx(i)))
+      digammaBinSum += digamma(count(ysorted, positiony(i), epsy(i)))
+      i += 1
+    }
+
+    val digammaBinSumEstimation = digammaBinSum / n
+    val kd = k.toDouble
+    val estimation = digamma(k) - (1 / kd) + digamma(n) - digammaBinSumEstimation
+    estimation * 1.443 // from nats to bits
+  }
+
+  // Insert a distance in the sorted array of the smallest distances (if it is smaller than the largest one)
+  @inline private def insert(heap: Array[Double], d: Double): Unit = {
+    var j = heap.length - 1
+    if(d < heap(j)) {
+      while(j > 0 && heap(j - 1) > d) {
+        heap(j) = heap(j - 1)
+        j -= 1
+      }
+      heap(j) = d
+    }
+  }
+
+  // digamma(x) for x = 0 to n, as computed by Digamma.digamma: -C + 1/1 + ... + 1/(x-1)
+  private def digammaTable(n: Int): Array[Double] = {
+    val table = new Array[Double](n + 1)
+    table(0) = -C
+    var x = 1
+    while(x <= n) {
+      table(x) = if(x == 1) -C else table(x - 1) + 1 / (x - 1).toDouble
+      x += 1
+    }
+    table
+  }
+
+  // Number of values v such that |value - v| <= eps, minus one (the point itself), with v sorted and value at position.
+  // |value - v| is monotone on each side of value, so we search each side for the last v within eps, with an
+  // exponential search (the counts are usually small), then a binary search.
+  private def count(sorted: Array[Double], position: Int, eps: Double): Int = {
+    val value = sorted(position)
+    var step = 1 // the last index within eps is in [position, hi]
+    while(position + step < sorted.length && math.abs(value - sorted(position + step)) <= eps) step *= 2
+    var lo = position + step / 2
+    var hi = (position + step).min(sorted.length - 1)
+    while(lo < hi) {
+      val mid = (lo + hi + 1) >>> 1
+      if(math.abs(value - sorted(mid)) <= eps) lo = mid else hi = mid - 1
+    }
+    val last = lo
+    step = 1 // the first index within eps is in [lo, position]
+    while(position - step >= 0 && math.abs(value - sorted(position - step)) <= eps) step *= 2
+    lo = (position - step).max(0)
+    hi = position - step / 2
+    while(lo < hi) {
+      val mid = (lo + hi) >>> 1
+      if(math.abs(value - sorted(mid)) <= eps) hi = mid else lo = mid + 1
+    }
+    last - lo
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.utils
+
+/**
+  * Partial top-k selection over an array of scores, e.g., the indexes of the arms of a bandit.
+  * The selection is a quickselect over a reusable index buffer, followed by a sort of the k selected indexes only,
+  * i.e., O(n + k log k) per call, without boxing or tuple allocation (apart from the returned array).
+  *
+  * Ties are broken by ascending index, so that largest(scores, k) gives the same result as
+  * scores.zipWithIndex.sortBy(-_._1).map(_._2).take(k) (and smallest the same as sortBy(_._1)).
+  *
+  * @param n the number of scores in each call (typically, the number of arms)
+  * @note An instance is not thread-safe, as the index buffer is shared between calls.
+  */
+class TopK(val n: Int) {
+  private val buffer: Array[Int] = new Array[Int](n)
+
+  /**
+    * Get the indexes of the k largest scores
+    * @param scores an array of n scores
+    * @param k the number of indexes to select
+    * @return the indexes of the k largest scores, in decreasing order of score
+    */
+  def largest(scores: Array[Double], k: Int): Array[Int] = select(scores, k, -1.0)
+
+  /**
+    * Get the indexes of the k smallest scores
+    * @param scores an array of n scores
+    * @param k the number of indexes to select
+    * @return the indexes of the k smallest scores, in increasing order of score
+    */
+  def smallest(scores: Array[Double], k: Int): Array[Int] = select(scores, k, 1.0)
+
+  // sign = -1.0 orders the scores decreasingly, sign = 1.0 increasingly (NaN always go last, as in sortBy)
+  private def select(scores: Array[Double], k: Int, sign: Double): Array[Int] = {
+    require(scores.length == n, s"Expected $n scores, got ${scores.length}")
+    val m = k.min(n).max(0)
+    var i = 0
+    while(i < n) {
+      buffer(i) = i
+      i += 1
+    }
+    if(m > 0 && m < n) partition(scores, sign, m - 1)
+    sort(scores, sign, 0, m - 1)
+    java.util.Arrays.copyOf(buffer, m)
+  }
+
+  @inline private def before(scores: Array[Double], sign: Double, a: Int, b: Int): Boolean = {
+    val c = java.lang.Double.compare(sign * scores(a), sign * scores(b))
+    c < 0 || (c == 0 && a < b)
+  }
+
+  @inline private def swap(i: Int, j: Int): Unit = {
+    val tmp = buffer(i)
+    buffer(i) = buffer(j)
+    buffer(j) = tmp
+  }
+
+  // Place the 3 elements at lo, mid and hi in order and return the median (which ends up at mid)
+  private def medianOfThree(scores: Array[Double], sign: Double, lo: Int, mid: Int, hi: Int): Int = {
+    if(before(scores, sign, buffer(mid), buffer(lo))) swap(mid, lo)
+    if(before(scores, sign, buffer(hi), buffer(mid))) {
+      swap(hi, mid)
+      if(before(scores, sign, buffer(mid), buffer(lo))) swap(mid, lo)
+    }
+    buffer(mid)
+  }
+
+  // Quickselect: rearrange the buffer such that buffer(0 to target) contains the (target+1) first elements
+  private def partition(scores: Array[Double], sign: Double, target: Int): Unit = {
+    var lo = 0
+    var hi = n - 1
+    while(hi > lo) {
+      val pivot = medianOfThree(scores, sign, lo, (lo + hi) >>> 1, hi)
+      var i = lo
+      var j = hi
+      while(i <= j) {
+        while(before(scores, sign, buffer(i), pivot)) i += 1
+        while(before(scores, sign, pivot, buffer(j))) j -= 1
+        if(i <= j) {
+          swap(i, j)
+          i += 1
+          j -= 1
+        }
+      }
+      if(target <= j) hi = j
+      else if(target >= i) lo = i
+      else return
+    }
+  }
+
+  // Quicksort of buffer(from to to), with insertion sort for the small ranges (recurse on the smaller side only)
+  private def sort(scores: Array[Double], sign: Double, from: Int, to: Int): Unit = {
+    var lo = from
+    var hi = to
+    while(hi - lo >= 16) {
+      val pivot = medianOfThree(scores, sign, lo, (lo + hi) >>> 1, hi)
+      var i = lo
+      var j = hi
+      while(i <= j) {
+        while(before(scores, sign, buffer(i), pivot)) i += 1
+        while(before(scores, sign, pivot, buffer(j))) j -= 1
+        if(i <= j) {
+          swap(i, j)
+          i += 1
+          j -= 1
+        }
+      }
+      if(j - lo < hi - i) {
+        sort(scores, sign, lo, j)
+        lo = i
+      } else {
+        sort(scores, sign, i, hi)
+        hi = j
+      }
+    }
+    var i = lo + 1
+    while(i <= hi) {
+      val x = buffer(i)
+      var j = i - 1
+      while(j >= lo && before(scores, sign, x, buffer(j))) {
+        buffer(j + 1) = buffer(j)
+        j -= 1
+      }
+      buffer(j + 1) = x
+      i += 1
+    }
+  }
+}
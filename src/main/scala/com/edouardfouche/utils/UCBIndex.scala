@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.utils
+
+import scala.collection.mutable
+
+/**
+  * Incremental selection of the arms with the largest UCB indexes, mean + sqrt(logfactor * log(horizon) / count).
+  *
+  * The exploration term only depends on the count of an arm and on the time, so the arms are grouped into buckets of
+  * equal count. Within a bucket, the order of the indexes is the order of the means, whatever the time: the arms of a
+  * bucket are grouped by mean (the groups are sorted by decreasing mean), and each group is a min-heap of its arms.
+  * As the arms of a group always have the same index, ties (e.g., the arms never pulled) come out by ascending index.
+  * The top-k arms are found by merging the buckets lazily, from the first arm of the first group of each bucket, i.e.,
+  * in O(B + k log(B + k)) for B buckets (distinct counts) instead of O(narms).
+  * Only the arms whose sums or counts changed have to be updated between two selections, in O(log narms) each.
+  *
+  * The selected arms (and their order) are exactly the same as with TopK.largest over the indexes computed as in
+  * BanditUCB.upperConfidences, including the ties (broken by ascending index) and the arms never pulled (NaN, last).
+  *
+  * @param sums the sum of the gains of each arm (read when an arm is updated)
+  * @param counts the number of pulls of each arm (read when an arm is updated)
+  * @param logfactor the factor of the exploration term
+  */
+class UCBIndex(sums: Array[Double], counts: Array[Double], val logfactor: Double) {
+  require(sums.length == counts.length)
+  val narms: Int = sums.length
+
+  // The mean and the count of each arm when it was last updated, its group and its position in the heap of the group
+  private val means = new Array[Double](narms)
+  private val keys = new Array[Double](narms)
+  private val groupOf = new Array[Int](narms)
+  private val positionOf = new Array[Int](narms)
+
+  // The buckets: the count of their arms, and their groups by decreasing mean (NaN last, as in TopK)
+  private val bucketIds = mutable.HashMap[Double, Int]()
+  private val bucketCounts = mutable.ArrayBuffer[Double]()
+  private val bucketGroups = mutable.ArrayBuffer[java.util.TreeMap[java.lang.Double, Integer]]()
+  private var freeBuckets: List[Int] = Nil
+  private val active = mutable.ArrayBuffer[Int]() // the buckets in use
+
+  // The groups: their bucket, their mean, and their heap of arms (by ascending index)
+  private val groupBuckets = mutable.ArrayBuffer[Int]()
+  private val groupMeans = mutable.ArrayBuffer[Double]()
+  private val groupHeaps = mutable.ArrayBuffer[Array[Int]]()
+  private val groupSizes = mutable.ArrayBuffer[Int]()
+  private var freeGroups: List[Int] = Nil
+
+  private val decreasing = new java.util.Comparator[java.lang.Double] {
+    def compare(a: java.lang.Double, b: java.lang.Double): Int = java.lang.Double.compare(-a, -b)
+  }
+
+  // The frontier of the merge: a binary heap of (group, position in the heap of the group), with the index of the arm
+  private var frontierValues = new Array[Double](16)
+  private var frontierArms = new Array[Int](16)
+  private var frontierGroups = new Array[Int](16)
+  private var frontierPositions = new Array[Int](16)
+  private var nfrontier = 0
+  private var candidates = new Array[Int](16)
+
+  rebuild()
+
+  /**
+    * Read the sums and counts of every arm again (e.g., after a reset)
+    */
+  def rebuild(): Unit = {
+    bucketIds.clear()
+    bucketCounts.clear()
+    bucketGroups.clear()
+    freeBuckets = Nil
+    active.clear()
+    groupBuckets.clear()
+    groupMeans.clear()
+    groupHeaps.clear()
+    groupSizes.clear()
+    freeGroups = Nil
+    var x = 0
+    while(x < narms) {
+      insert(x)
+      x += 1
+    }
+  }
+
+  /**
+    * Update an arm whose sums or counts changed
+    */
+  def update(arm: Int): Unit = {
+    remove(arm)
+    insert(arm)
+  }
+
+  def update(arms: Array[Int]): Unit = {
+    var i = 0
+    while(i < arms.length) {
+      update(arms(i))
+      i += 1
+    }
+  }
+
+  /**
+    * Get the arms with the k largest UCB indexes
+    * @param t the current time step
+    * @param horizon the time step used in the exploration term
+    * @param k the number of arms
+    * @return the k arms with the largest indexes, in decreasing order of index
+    */
+  def largest(t: Double, horizon: Double, k: Int): Array[Int] = {
+    val m = k.min(narms).max(0)
+    if(m == 0) return Array[Int]()
+    val logt = math.log(horizon)
+
+    nfrontier = 0
+    var i = 0
+    while(i < active.length) {
+      push(bucketGroups(active(i)).firstEntry.getValue, 0, t, logt)
+      i += 1
+    }
+
+    // Pop the arms by decreasing index, until m arms are popped and the next index is below the m-th one.
+    // The means of two groups may round to the same index: the arms tied with the m-th one are popped as well, but
+    // the arms after the largest tied arm among the first m cannot be selected, so their heaps are not explored.
+    var ncandidates = 0
+    var last = Double.NaN
+    var bound = Int.MaxValue
+    var popping = true
+    while(popping && nfrontier > 0) {
+      if(ncandidates >= m && java.lang.Double.compare(-frontierValues(0), -last) != 0) popping = false
+      else {
+        val arm = frontierArms(0)
+        val group = frontierGroups(0)
+        val position = frontierPositions(0)
+        last = frontierValues(0)
+        pop()
+        if(position == 0) { // the next group of the bucket
+          val next = bucketGroups(groupBuckets(group)).higherEntry(groupMeans(group))
+          if(next != null) push(next.getValue, 0, t, logt)
+        }
+        if(arm < bound) {
+          if(ncandidates == candidates.length) candidates = java.util.Arrays.copyOf(candidates, ncandidates * 2)
+          candidates(ncandidates) = arm
+          ncandidates += 1
+          if(ncandidates == m) bound = tiedBound(ncandidates, last, t, logt)
+          if(2 * position + 1 < groupSizes(group)) push(group, 2 * position + 1, t, logt)
+          if(2 * position + 2 < groupSizes(group)) push(group, 2 * position + 2, t, logt)
+        }
+      }
+    }
+
+    // The candidates tied with the m-th one may not be in the order of their indexes
+    val scores = new Array[Double](ncandidates)
+    i = 0
+    while(i < ncandidates) {
+      scores(i) = value(candidates(i), t, logt)
+      i += 1
+    }
+    val order = new TopK(ncandidates).largest(scores, m)
+    order.map(candidates(_))
+  }
+
+  // The largest arm among the candidates tied with the last one, plus one
+  private def tiedBound(ncandidates: Int, last: Double, t: Double, logt: Double): Int = {
+    var bound = 0
+    var i = 0
+    while(i < ncandidates) {
+      if(java.lang.Double.compare(value(candidates(i), t, logt), last) == 0) bound = bound.max(candidates(i) + 1)
+      i += 1
+    }
+    bound
+  }
+
+  // The UCB index of an arm, computed as in BanditUCB.upperConfidences
+  @inline private def value(arm: Int, t: Double, logt: Double): Double = {
+    val count = keys(arm)
+    val confidence = if(t == 0.0 | count == 0.0) 0.0 else math.sqrt((logfactor*logt)/count)
+    means(arm) + confidence
+  }
+
+  private def insert(arm: Int): Unit = {
+    val count = counts(arm)
+    val mean = if(count == 0.0) Double.NaN else sums(arm)/count
+    means(arm) = mean
+    keys(arm) = count
+    val bucket = bucketIds.getOrElseUpdate(count, newBucket(count))
+    val groups = bucketGroups(bucket)
+    var group: Integer = groups.get(mean)
+    if(group == null) {
+      group = newGroup(bucket, mean)
+      groups.put(mean, group)
+    }
+    val g: Int = group
+    if(groupSizes(g) == groupHeaps(g).length) groupHeaps(g) = java.util.Arrays.copyOf(groupHeaps(g), groupSizes(g) * 2)
+    groupOf(arm) = g
+    place(g, arm, groupSizes(g))
+    groupSizes(g) += 1
+    up(g, groupSizes(g) - 1)
+  }
+
+  private def remove(arm: Int): Unit = {
+    val group = groupOf(arm)
+    val position = positionOf(arm)
+    groupSizes(group) -= 1
+    if(position < groupSizes(group)) { // move the last arm of the heap to the free position
+      val moved = groupHeaps(group)(groupSizes(group))
+      place(group, moved, position)
+      up(group, position)
+      down(group, positionOf(moved))
+    }
+    if(groupSizes(group) == 0) {
+      val bucket = groupBuckets(group)
+      bucketGroups(bucket).remove(groupMeans(group))
+      freeGroups = group :: freeGroups
+      if(bucketGroups(bucket).isEmpty) {
+        bucketIds.remove(bucketCounts(bucket))
+        active -= bucket
+        freeBuckets = bucket :: freeBuckets
+      }
+    }
+  }
+
+  private def newBucket(count: Double): Int = {
+    val bucket = freeBuckets match {
+      case b :: rest =>
+        freeBuckets = rest
+        bucketCounts(b) = count
+        b
+      case Nil =>
+        bucketCounts += count
+        bucketGroups += new java.util.TreeMap[java.lang.Double, Integer](decreasing)
+        bucketCounts.length - 1
+    }
+    active += bucket
+    bucket
+  }
+
+  private def newGroup(bucket: Int, mean: Double): Int = freeGroups match {
+    case g :: rest =>
+      freeGroups = rest
+      groupBuckets(g) = bucket
+      groupMeans(g) = mean
+      g
+    case Nil =>
+      groupBuckets += bucket
+      groupMeans += mean
+      groupHeaps += new Array[Int](4)
+      groupSizes += 0
+      groupSizes.length - 1
+  }
+
+  @inline private def place(group: Int, arm: Int, position: Int): Unit = {
+    groupHeaps(group)(position) = arm
+    positionOf(arm) = position
+  }
+
+  private def up(group: Int, from: Int): Unit = {
+    val heap = groupHeaps(group)
+    var i = from
+    val arm = heap(i)
+    var moving = true
+    while(i > 0 && moving) {
+      val parent = (i - 1) / 2
+      if(arm < heap(parent)) {
+        place(group, heap(parent), i)
+        i = parent
+      } else moving = false
+    }
+    place(group, arm, i)
+  }
+
+  private def down(group: Int, from: Int): Unit = {
+    val heap = groupHeaps(group)
+    val size = groupSizes(group)
+    var i = from
+    val arm = heap(i)
+    var moving = true
+    while(2 * i + 1 < size && moving) {
+      var child = 2 * i + 1
+      if(child + 1 < size && heap(child + 1) < heap(child)) child += 1
+      if(heap(child) < arm) {
+        place(group, heap(child), i)
+        i = child
+      } else moving = false
+    }
+    place(group, arm, i)
+  }
+
+  // The frontier is ordered by decreasing index, then by increasing arm (as TopK.largest)
+  @inline private def first(i: Int, j: Int): Boolean = {
+    val c = java.lang.Double.compare(-frontierValues(i), -frontierValues(j))
+    c < 0 || (c == 0 && frontierArms(i) < frontierArms(j))
+  }
+
+  private def push(group: Int, position: Int, t: Double, logt: Double): Unit = {
+    if(nfrontier == frontierValues.length) {
+      frontierValues = java.util.Arrays.copyOf(frontierValues, nfrontier * 2)
+      frontierArms = java.util.Arrays.copyOf(frontierArms, nfrontier * 2)
+      frontierGroups = java.util.Arrays.copyOf(frontierGroups, nfrontier * 2)
+      frontierPositions = java.util.Arrays.copyOf(frontierPositions, nfrontier * 2)
+    }
+    val arm = groupHeaps(group)(position)
+    var i = nfrontier
+    frontierValues(i) = value(arm, t, logt)
+    frontierArms(i) = arm
+    frontierGroups(i) = group
+    frontierPositions(i) = position
+    nfrontier += 1
+    while(i > 0 && first(i, (i - 1) / 2)) {
+      swapFrontier(i, (i - 1) / 2)
+      i = (i - 1) / 2
+    }
+  }
+
+  private def pop(): Unit = {
+    nfrontier -= 1
+    swapFrontier(0, nfrontier)
+    var i = 0
+    var moving = true
+    while(2 * i + 1 < nfrontier && moving) {
+      var child = 2 * i + 1
+      if(child + 1 < nfrontier && first(child + 1, child)) child += 1
+      if(first(child, i)) {
+        swapFrontier(i, child)
+        i = child
+      } else moving = false
+    }
+  }
+
+  @inline private def swapFrontier(i: Int, j: Int): Unit = {
+    val value = frontierValues(i)
+    frontierValues(i) = frontierValues(j)
+    frontierValues(j) = value
+    val arm = frontierArms(i)
+    frontierArms(i) = frontierArms(j)
+    frontierArms(j) = arm
+    val group = frontierGroups(i)
+    frontierGroups(i) = frontierGroups(j)
+    frontierGroups(j) = group
+    val position = frontierPositions(i)
+    frontierPositions(i) = frontierPositions(j)
+    frontierPositions(j) = position
+  }
+}
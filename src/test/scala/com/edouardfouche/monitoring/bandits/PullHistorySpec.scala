@@ -0,0 +1,52 @@
+package com.edouardfouche.monitoring.bandits
+
+import org.scalatest.FunSuite
+
+import scala.collection.mutable
+import scala.util.Random
+
+/**
+  * Compare PullHistory with a queue of rounds (the List of updates the ADWIN bandits used to keep), on random rounds
+  * and rollbacks, so that the ring buffers wrap around and grow.
+  */
+class PullHistorySpec extends FunSuite {
+  val rand = new Random(0)
+
+  test("the history gives the same rounds as a queue") {
+    for(_ <- 1 to 50) {
+      val history = new PullHistory
+      val queue = mutable.Queue[Array[(Int, Double)]]()
+      val maxsize = 1 + rand.nextInt(200)
+      for(_ <- 1 to 2000) {
+        rand.nextInt(50) match {
+          case 0 =>
+            history.clear()
+            queue.clear()
+          case x if x < 20 =>
+            val n = rand.nextInt(queue.length + 1)
+            val forgotten = mutable.ArrayBuffer[(Int, Double)]()
+            history.rollback(n)((arm, reward) => forgotten += ((arm, reward)))
+            val expected = (1 to n).flatMap(_ => queue.dequeue())
+            assert(forgotten == expected)
+          case _ =>
+            val round = Array.fill(rand.nextInt(maxsize))((rand.nextInt(1000), rand.nextDouble()))
+            history.add(round.map(_._1), round.map(_._2))
+            queue.enqueue(round)
+        }
+        assert(history.length == queue.length)
+        val newest = mutable.ArrayBuffer[Int]()
+        history.newest(newest += _)
+        assert(newest == queue.lastOption.map(_.map(_._1).toSeq).getOrElse(Seq()))
+      }
+      val rest = mutable.ArrayBuffer[(Int, Double)]()
+      history.rollback(history.length)((arm, reward) => rest += ((arm, reward)))
+      assert(rest == queue.flatten)
+    }
+  }
+
+  test("rolling back more rounds than the history holds is an error") {
+    val history = new PullHistory
+    history.add(Array(0, 1), Array(0.5, 1.0))
+    intercept[IllegalArgumentException](history.rollback(2)((_, _) => ()))
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.monitoring.resetstrategies
+
+import abifet.ADWIN
+import org.scalatest.FunSuite
+
+import scala.util.Random
+
+/**
+  * Compare MultiAdwin with one abifet.ADWIN per arm, on random streams with abrupt changes, where the arms receive
+  * their inputs in a random order.
+  */
+class MultiAdwinSpec extends FunSuite {
+  val rand = new Random(0)
+
+  test("the detections and the windows are the same as with abifet.ADWIN") {
+    for(_ <- 1 to 20) {
+      val narms = 1 + rand.nextInt(30)
+      val delta = if(rand.nextBoolean()) MultiAdwin.DELTA else math.pow(10, -4 + 4 * rand.nextDouble())
+      val binary = rand.nextBoolean()
+      val multi = new MultiAdwin(narms, delta)
+      val adwins = Array.fill(narms)(new ADWIN(delta))
+      val means = Array.fill(narms)(rand.nextDouble())
+      var detections = 0
+      for(_ <- 1 to 20000) {
+        if(rand.nextInt(2000) == 0) means(rand.nextInt(narms)) = rand.nextDouble() // abrupt change
+        val arm = rand.nextInt(narms)
+        val value = if(binary) { if(rand.nextDouble() < means(arm)) 1.0 else 0.0 } else means(arm) + rand.nextGaussian()
+        val expected = adwins(arm).setInput(value)
+        assert(multi.addElement(arm, value) == expected)
+        if(expected) detections += 1
+
+        val x = rand.nextInt(narms)
+        assert(multi.width(x) == adwins(x).getWidth)
+        assert(multi.total(x) == adwins(x).getTotal)
+        assert(multi.variance(x).equals(adwins(x).getVariance)) // NaN for an empty window
+        assert(multi.detect(x) == adwins(x).getDetect)
+        assert(multi.numberDetections(x) == adwins(x).getNumberDetections)
+      }
+      assert(detections > 0)
+    }
+  }
+
+  test("addElements gives the same detections as abifet.ADWIN") {
+    val narms = 10
+    val adwins = Array.fill(narms)(new ADWIN())
+    val batched = new MultiAdwin(narms)
+    for(r <- 1 to 5000) {
+      val arms = (0 until narms).filter(_ => rand.nextBoolean()).toArray
+      val values = arms.map(x => if(r > 2500 && x % 2 == 0) 1.0 else rand.nextDouble() * 0.5)
+      val changes = arms.indices.count(i => adwins(arms(i)).setInput(values(i)))
+      assert(batched.addElements(arms, values) == changes)
+    }
+    (0 until narms).foreach { x =>
+      assert(batched.width(x) == adwins(x).getWidth)
+      assert(batched.numberDetections(x) == adwins(x).getNumberDetections)
+    }
+    assert((0 until narms).map(batched.numberDetections).sum > 0)
+  }
+}
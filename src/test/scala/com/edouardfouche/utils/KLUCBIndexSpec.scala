@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.utils
+
+import org.scalatest.FunSuite
+
+import scala.util.Random
+
+/**
+  * Compare the cached KL-UCB indexes with the indexes computed directly with Newton's method, on random runs of a
+  * bandit: the arms are pulled (with binary or continuous rewards), forgotten (as with ADWIN or a sliding window) and
+  * reset, while the time goes on.
+  */
+class KLUCBIndexSpec extends FunSuite {
+  val rand = new Random(0)
+
+  // The index of an arm, as computed by the bandits without a cache
+  def direct(sums: Array[Double], counts: Array[Double], arm: Int, t: Double,
+             exploration: (Double, Double) => Double, solver: (Double, Double) => Double): Double = {
+    if(t == 0.0 | counts(arm) == 0.0) 1.0
+    else solver((sums(arm)/counts(arm)).max(KLUCB.Ndelta), exploration(t, counts(arm)))
+  }
+
+  /**
+    * Run a random bandit, and check at each round that the cache selects the same arms as a full sort of the
+    * direct indexes, and gives the same index for a random arm
+    */
+  def simulate(exploration: (Double, Double) => Double, fast: Boolean, solver: (Double, Double) => Double): Unit = {
+    for(_ <- 1 to 20) {
+      val narms = 1 + rand.nextInt(40)
+      val binary = rand.nextBoolean()
+      val sums = new Array[Double](narms)
+      val counts = new Array[Double](narms)
+      val cache = new KLUCBIndex(narms, exploration, fast)
+      val topk = new TopK(narms)
+      val means = Array.fill(narms)(rand.nextDouble())
+      var t = 0.0
+      for(_ <- 1 to 300) {
+        val m = 1 + rand.nextInt(narms)
+        val expected = topk.largest(Array.tabulate(narms)(direct(sums, counts, _, t, exploration, solver)), m)
+        val selected = cache.largest(sums, counts, t, m)
+        assert(selected sameElements expected, s"t=$t, m=$m")
+
+        val arm = rand.nextInt(narms)
+        assert(cache(sums, counts, arm, t) == direct(sums, counts, arm, t, exploration, solver))
+
+        rand.nextInt(20) match {
+          case 0 => // reset
+            java.util.Arrays.fill(sums, 0.0)
+            java.util.Arrays.fill(counts, 0.0)
+            t = 0.0
+          case 1 => // forget some pulls
+            val x = rand.nextInt(narms)
+            if(counts(x) > 0) {
+              counts(x) -= 1
+              sums(x) = (sums(x) - means(x)).max(0.0).min(counts(x))
+            }
+          case _ => // pull the selected arms, or random ones
+            val pulled = if(rand.nextBoolean()) selected else Array.fill(m)(rand.nextInt(narms)).distinct
+            pulled.foreach { x =>
+              val reward = if(binary) { if(rand.nextDouble() < means(x)) 1.0 else 0.0 } else rand.nextDouble() * means(x)
+              sums(x) += reward
+              counts(x) += 1
+            }
+        }
+        t += 1
+      }
+    }
+  }
+
+  test("the cache selects the same arms as the direct computation (KL-UCB)") {
+    simulate(KLUCB.exploration, fast = false, KLUCB.upper)
+  }
+
+  test("the cache selects the same arms as the direct computation (KL-UCB+)") {
+    simulate(KLUCB.explorationPlus, fast = false, KLUCB.upper)
+  }
+
+  test("the fast inversion is within fasterror of Newton's method") {
+    for(_ <- 1 to 100000) {
+      val p = rand.nextInt(10) match {
+        case 0 => KLUCB.Ndelta
+        case 1 => 1.0 - KLUCB.Ndelta - rand.nextDouble() * 1e-6 // Newton's method starts beyond 1 from 1 - Ndelta on
+        case _ => rand.nextDouble().max(KLUCB.Ndelta)
+      }
+      val logndn = math.pow(10, -9 + rand.nextDouble() * 10.5) // from 1e-9 to about 30, beyond the table
+      assert(math.abs(KLUCB.upperFast(p, logndn) - KLUCB.upper(p, logndn)) <= KLUCB.fasterror, s"p=$p, logndn=$logndn")
+    }
+  }
+
+  test("the fast cache selects the same arms as the direct fast computation") {
+    simulate(KLUCB.exploration, fast = true, KLUCB.upperFast)
+    simulate(KLUCB.explorationPlus, fast = true, KLUCB.upperFast)
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.utils
+
+import org.scalatest.FunSuite
+
+import scala.util.Random
+
+/**
+  * Compare TopK with a full sort of the scores, on random scores with many ties, infinities and NaN.
+  */
+class TopKSpec extends FunSuite {
+  val rand = new Random(0)
+
+  def randomScores(n: Int): Array[Double] = Array.fill(n) {
+    rand.nextInt(10) match {
+      case 0 => Double.NaN
+      case 1 => Double.PositiveInfinity
+      case 2 => Double.NegativeInfinity
+      case 3 | 4 => rand.nextInt(3).toDouble // ties
+      case _ => rand.nextGaussian()
+    }
+  }
+
+  test("largest gives the first k indexes of a sort by decreasing score") {
+    for(_ <- 1 to 2000) {
+      val n = 1 + rand.nextInt(50)
+      val scores = randomScores(n)
+      val k = rand.nextInt(n + 2)
+      val expected = scores.zipWithIndex.sortBy(-_._1).map(_._2).take(k)
+      assert(new TopK(n).largest(scores, k) sameElements expected, scores.mkString(","))
+    }
+  }
+
+  test("smallest gives the first k indexes of a sort by increasing score") {
+    for(_ <- 1 to 2000) {
+      val n = 1 + rand.nextInt(50)
+      val scores = randomScores(n)
+      val k = rand.nextInt(n + 2)
+      val expected = scores.zipWithIndex.sortBy(_._1).map(_._2).take(k)
+      assert(new TopK(n).smallest(scores, k) sameElements expected, scores.mkString(","))
+    }
+  }
+
+  test("an instance can be reused for different scores and k") {
+    val n = 100
+    val topk = new TopK(n)
+    for(_ <- 1 to 500) {
+      val scores = randomScores(n)
+      val k = rand.nextInt(n + 1)
+      assert(topk.largest(scores, k) sameElements scores.zipWithIndex.sortBy(-_._1).map(_._2).take(k))
+    }
+  }
+}
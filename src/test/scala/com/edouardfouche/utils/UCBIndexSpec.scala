@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2018 Edouard Fouché
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.edouardfouche.utils
+
+import org.scalatest.FunSuite
+
+import scala.util.Random
+
+/**
+  * Compare the incremental UCB index with a full argmax of the UCB indexes (computed as in BanditUCB.upperConfidences),
+  * on random runs of a bandit: the arms are pulled, forgotten (as with a sliding window) and reset.
+  */
+class UCBIndexSpec extends FunSuite {
+  val rand = new Random(0)
+
+  // The indexes of the arms, as in BanditUCB.upperConfidences (the arms never pulled are last)
+  def upperConfidences(sums: Array[Double], counts: Array[Double], logfactor: Double,
+                       t: Double, horizon: Double): Array[Double] = {
+    val logt = math.log(horizon)
+    Array.tabulate(sums.length) { x =>
+      if(counts(x) == 0.0) Double.NaN
+      else sums(x)/counts(x) + (if(t == 0.0) 0.0 else math.sqrt((logfactor*logt)/counts(x)))
+    }
+  }
+
+  def simulate(binary: Boolean): Unit = {
+    for(_ <- 1 to 30) {
+      val narms = 1 + rand.nextInt(60)
+      val logfactor = if(rand.nextBoolean()) 2.0 else rand.nextDouble()
+      val window = 1 + rand.nextInt(200)
+      val sums = new Array[Double](narms)
+      val counts = new Array[Double](narms)
+      val means = Array.fill(narms)(rand.nextDouble())
+      val index = new UCBIndex(sums, counts, logfactor)
+      val topk = new TopK(narms)
+      var t = 0.0
+      for(_ <- 1 to 500) {
+        val k = rand.nextInt(narms + 1)
+        val horizon = if(rand.nextBoolean()) t else t.min(window)
+        val expected = topk.largest(upperConfidences(sums, counts, logfactor, t, horizon), k)
+        val selected = index.largest(t, horizon, k)
+        assert(selected sameElements expected, s"t=$t, horizon=$horizon, k=$k")
+
+        rand.nextInt(30) match {
+          case 0 => // reset
+            java.util.Arrays.fill(sums, 0.0)
+            java.util.Arrays.fill(counts, 0.0)
+            index.rebuild()
+            t = 0.0
+          case _ =>
+            val pulled = if(rand.nextBoolean()) selected else Array.fill(k)(rand.nextInt(narms)).distinct
+            pulled.foreach { x =>
+              val reward = if(binary) { if(rand.nextDouble() < means(x)) 1.0 else 0.0 } else rand.nextDouble() * means(x)
+              sums(x) += reward
+              counts(x) += 1
+            }
+            index.update(pulled)
+            // forget the pulls of some arms (e.g., beyond a sliding window), down to 0 pulls
+            Array.fill(rand.nextInt(3))(rand.nextInt(narms)).distinct.filter(counts(_) > 0).foreach { x =>
+              val reward = if(binary) sums(x).min(rand.nextInt(2)) else sums(x) / counts(x)
+              sums(x) -= reward
+              counts(x) -= 1
+              index.update(x)
+            }
+        }
+        t += 1
+      }
+    }
+  }
+
+  test("the index selects the same arms as a full argmax (binary rewards)") {
+    simulate(binary = true)
+  }
+
+  test("the index selects the same arms as a full argmax (continuous rewards)") {
+    simulate(binary = false)
+  }
+}
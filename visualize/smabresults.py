@@ -0,0 +1,125 @@
+"""
+Reader for the columnar result files (.smabr) written by the experiments with -Dresults=columnar.
+See ColumnarResults.scala for a description of the format.
+
+Example:
+    from smabresults import read
+    masterdataK = read("../experiments/<date>_BanditScalabilityK_/BanditScalabilityK.smabr")
+
+read() returns a pandas DataFrame, with the dictionary-encoded columns as categoricals.
+read_columns() only needs the standard library, and returns a dict of lists.
+"""
+import struct
+import zlib
+from array import array
+
+MAGIC = b"SMABRSLT"
+VERSION = 1
+INT64, FLOAT64, DICTIONARY = 0, 1, 2
+MISSING_INT64 = -2 ** 63  # the missing values of the int64 columns
+
+
+def chunks(path):
+    """Yield each chunk of a file as (nrows, [(name, type, values, entries)]).
+    The values are an array of int64 or float64, or of int32 codes into the entries (-1 if missing)."""
+    with open(path, "rb") as f:
+        data = f.read()
+    if data[:8] != MAGIC:
+        raise ValueError("%s is not a columnar result file" % path)
+    (version,) = struct.unpack_from("<i", data, 8)
+    if version != VERSION:
+        raise ValueError("Unsupported version %d of %s" % (version, path))
+    offset = 12
+    while offset < len(data):
+        nrows, ncols, size, csize = struct.unpack_from("<iiii", data, offset)
+        offset += 16
+        payload = zlib.decompress(data[offset:offset + csize])
+        offset += csize
+        if len(payload) != size:
+            raise ValueError("Corrupted chunk in %s" % path)
+        yield nrows, _decode(payload, nrows, ncols)
+
+
+def _decode(payload, nrows, ncols):
+    def values(typecode, width, position):
+        a = array(typecode)
+        a.frombytes(payload[position:position + width * nrows])
+        if struct.pack("=i", 1) != struct.pack("<i", 1):  # the file is little-endian
+            a.byteswap()
+        return a, position + width * nrows
+
+    def string(position):
+        (length,) = struct.unpack_from("<i", payload, position)
+        return payload[position + 4:position + 4 + length].decode("utf-8"), position + 4 + length
+
+    columns = []
+    position = 0
+    for _ in range(ncols):
+        name, position = string(position)
+        kind = payload[position]
+        position += 1
+        entries = None
+        if kind == INT64:
+            column, position = values("q", 8, position)
+        elif kind == FLOAT64:
+            column, position = values("d", 8, position)
+        elif kind == DICTIONARY:
+            (nentries,) = struct.unpack_from("<i", payload, position)
+            position += 4
+            entries = []
+            for _ in range(nentries):
+                entry, position = string(position)
+                entries.append(entry)
+            column, position = values("i", 4, position)
+        else:
+            raise ValueError("Unknown column type %d" % kind)
+        columns.append((name, kind, column, entries))
+    return columns
+
+
+def read_columns(path):
+    """Read a file as a dict {name: list of values}, with None for the missing values."""
+    result = {}
+    total = 0
+    for nrows, columns in chunks(path):
+        for name, kind, column, entries in columns:
+            if name not in result:
+                result[name] = [None] * total
+            if kind == DICTIONARY:
+                result[name].extend(entries[code] if code >= 0 else None for code in column)
+            elif kind == INT64:
+                result[name].extend(v if v != MISSING_INT64 else None for v in column)
+            else:
+                result[name].extend(column)
+        total += nrows
+        for name in result:
+            result[name].extend([None] * (total - len(result[name])))
+    return result
+
+
+def read(path):
+    """Read a file as a pandas DataFrame."""
+    import numpy as np
+    import pandas as pd
+
+    frames = []
+    categorical = set()
+    for nrows, columns in chunks(path):
+        frame = {}
+        for name, kind, column, entries in columns:
+            if kind == DICTIONARY:
+                frame[name] = pd.Categorical.from_codes(np.frombuffer(column, dtype=np.int32), entries)
+                categorical.add(name)
+            elif kind == INT64:
+                values = np.frombuffer(column, dtype=np.int64)
+                missing = values == MISSING_INT64
+                frame[name] = pd.arrays.IntegerArray(values.copy(), missing) if missing.any() else values
+            else:
+                frame[name] = np.frombuffer(column, dtype=np.float64)
+        frames.append(pd.DataFrame(frame, index=range(nrows)))
+    if not frames:
+        return pd.DataFrame()
+    data = pd.concat(frames, ignore_index=True, sort=False)
+    for name in categorical:  # the chunks have different dictionaries
+        data[name] = data[name].astype("category")
+    return data